@@ -0,0 +1,90 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a session from its JSON, through the parser-based reader used for requests and through
+ * {@link SessionReader#buildSession} from an already parsed object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SessionReaderBenchmark {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private final SessionReader reader = new SessionReader(64 * 1024, 16 * 1024, 64);
+
+    private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+
+    private String json;
+
+    private byte[] bytes;
+
+    private JsonObject object;
+
+    @Setup
+    public void setup() {
+        // The session with the longest encoding, so the abstract is a realistic worst case
+        Session longest = Sessions.bootstrap().get(0);
+        for (Session session : Sessions.bootstrap()) {
+            if (session.toJson().length > longest.toJson().length) {
+                longest = session;
+            }
+        }
+        bytes = longest.toJson();
+        json = new String(bytes, StandardCharsets.UTF_8);
+        try (JsonReader jsonReader = Json.createReader(new StringReader(json))) {
+            object = jsonReader.readObject();
+        }
+    }
+
+    @Benchmark
+    public Session readFrom() throws IOException {
+        return reader.readFrom(Session.class, Session.class, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, headers,
+            new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public Session readLine() {
+        return reader.read(json);
+    }
+
+    @Benchmark
+    public Session buildSession() {
+        return SessionReader.buildSession(object);
+    }
+
+    @Benchmark
+    public Session parseAndBuildSession() {
+        try (JsonReader jsonReader = Json.createReader(new StringReader(json))) {
+            return SessionReader.buildSession(jsonReader.readObject());
+        }
+    }
+}
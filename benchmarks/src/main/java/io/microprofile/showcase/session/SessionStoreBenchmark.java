@@ -0,0 +1,78 @@
+package io.microprofile.showcase.session;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The store operations behind the REST resource, on a store shared by all benchmark threads; run
+ * with {@code -t} to measure them under contention. Saves are paired with a remove so the store
+ * keeps its size across iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SessionStoreBenchmark {
+
+    @Param({"1000", "100000"})
+    public int storeSize;
+
+    private SessionStore store;
+
+    private String[] ids;
+
+    private List<Session> templates;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = Sessions.store(storeSize);
+        ids = store.getSessions().stream().map(Session::getId).toArray(String[]::new);
+        templates = Sessions.bootstrap();
+    }
+
+    private String anyId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private Session anyTemplate() {
+        return templates.get(ThreadLocalRandom.current().nextInt(templates.size()));
+    }
+
+    @Benchmark
+    public Optional<Session> find() {
+        return store.find(anyId());
+    }
+
+    @Benchmark
+    public Collection<Session> getSessions() {
+        return store.getSessions();
+    }
+
+    @Benchmark
+    public Optional<Session> update() {
+        return store.update(anyId(), anyTemplate());
+    }
+
+    @Benchmark
+    public Optional<Session> saveAndRemove() {
+        return store.remove(store.save(anyTemplate()).getId());
+    }
+}
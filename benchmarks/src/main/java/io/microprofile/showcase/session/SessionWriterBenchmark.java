@@ -0,0 +1,84 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing sessions as JSON: encoding one session from scratch, writing one with its encoding
+ * cached, and writing whole listings through {@link SessionCollectionWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SessionWriterBenchmark {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private static final Type COLLECTION_TYPE = new GenericType<Collection<Session>>() { }.getType();
+
+    @Param({"100", "10000"})
+    public int listingSize;
+
+    private final SessionWriter writer = new SessionWriter();
+
+    private final SessionCollectionWriter collectionWriter = new SessionCollectionWriter();
+
+    private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+
+    private Session session;
+
+    private List<Session> listing;
+
+    @Setup
+    public void setup() {
+        session = Sessions.bootstrap().get(0);
+        listing = Sessions.sample(listingSize);
+        listing.forEach(Session::toJson);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return SessionWriter.encode(session);
+    }
+
+    @Benchmark
+    public int writeTo() throws IOException {
+        out.reset();
+        writer.writeTo(session, Session.class, Session.class, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, headers, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeCollection() throws IOException {
+        out.reset();
+        collectionWriter.writeTo(listing, List.class, COLLECTION_TYPE, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, headers, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,45 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.microprofile.showcase.bootstrap.BootstrapDataProducer;
+
+/**
+ * The sessions the benchmarks work with: the conference's own bootstrap sessions, so titles,
+ * abstracts and speaker lists have realistic sizes.
+ */
+final class Sessions {
+
+    private static final List<Session> BOOTSTRAP =
+        Collections.unmodifiableList(new ArrayList<>(BootstrapSnapshot.fromBootstrap(new BootstrapDataProducer().load()).getSessions()));
+
+    private Sessions() {
+    }
+
+    static List<Session> bootstrap() {
+        return BOOTSTRAP;
+    }
+
+    /**
+     * The given number of sessions, cycling through the bootstrap sessions.
+     */
+    static List<Session> sample(final int count) {
+        final List<Session> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sessions.add(BOOTSTRAP.get(i % BOOTSTRAP.size()));
+        }
+        return sessions;
+    }
+
+    /**
+     * A store holding the given number of sessions, built without a container: no bootstrap, no
+     * journal and no metrics.
+     */
+    static SessionStore store(final int size) {
+        final SessionStore store = new SessionStore();
+        store.saveAll(sample(size));
+        return store;
+    }
+}
@@ -0,0 +1,236 @@
+package io.microprofile.showcase.session.loadtest;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Drives a mix of requests at a session service and reports latency percentiles per operation. See
+ * the pom for the options.
+ *
+ * Every second the driver prints the throughput and latency of the last second; at the end it
+ * prints the percentiles of the whole measured run, leaving out the warmup.
+ */
+public final class LoadTest {
+
+    private final Scenario scenario;
+
+    private final int connections;
+
+    private final long warmupNanos;
+
+    private final long durationNanos;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, Long> measuredErrors = new EnumMap<>(Operation.class);
+
+    private final HistogramLogWriter log;
+
+    private long startNanos;
+
+    private LoadTest(final Scenario scenario, final int connections, final long warmupSeconds, final long durationSeconds,
+                     final HistogramLogWriter log) {
+        this.scenario = scenario;
+        this.connections = connections;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.log = log;
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(3));
+            errors.put(operation, new LongAdder());
+            totals.put(operation, new Histogram(3));
+            measuredErrors.put(operation, 0L);
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options are --name=value, not " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        final String url = options.getOrDefault("url", "http://localhost:9080").replaceAll("/+$", "");
+        final String mode = options.getOrDefault("mode", "closed");
+        final int connections = Integer.parseInt(options.getOrDefault("connections", "16"));
+        final int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        final long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        final long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+
+        // HttpURLConnection keeps only 5 idle connections per host unless told otherwise
+        System.setProperty("http.maxConnections", Integer.toString(connections));
+        final Scenario scenario = Scenario.connect(url, Scenario.parseMix(options.get("mix")));
+
+        HistogramLogWriter log = null;
+        if (options.containsKey("histograms")) {
+            log = new HistogramLogWriter(new PrintStream(new FileOutputStream(options.get("histograms")), false, "UTF-8"));
+            log.outputComment("Session service load test against " + url + ", " + mode + " loop");
+            log.outputLogFormatVersion();
+            log.outputStartTime(System.currentTimeMillis());
+            log.outputLegend();
+        }
+
+        final LoadTest test = new LoadTest(scenario, connections, warmup, duration, log);
+        System.out.printf("%s loop against %s: %d connections%s, %ds warmup, %ds measured%n", mode, url, connections,
+            "open".equals(mode) ? ", " + rate + " requests/s" : "", warmup, duration);
+        switch (mode) {
+            case "closed":
+                test.closedLoop();
+                break;
+            case "open":
+                test.openLoop(rate);
+                break;
+            default:
+                throw new IllegalArgumentException("Mode is open or closed, not " + mode);
+        }
+        test.report(System.out, duration);
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Each connection sends its next request as soon as the last one returns.
+     */
+    private void closedLoop() throws InterruptedException {
+        final ScheduledExecutorService reporter = startReporting();
+        final long end = startNanos + warmupNanos + durationNanos;
+        final Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            threads[i] = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    final long sent = System.nanoTime();
+                    record(scenario.execute(scenario.next()), sent);
+                }
+            }, "loadtest-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        stopReporting(reporter);
+    }
+
+    /**
+     * Requests are due at a constant rate and handed to the connections as they fall due; latency
+     * is measured from when a request was due, so a backlog shows up in the percentiles rather than
+     * as a lower request rate.
+     */
+    private void openLoop(final int rate) throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(connections);
+        final ScheduledExecutorService reporter = startReporting();
+        final long end = startNanos + warmupNanos + durationNanos;
+        final double interval = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+        for (long i = 0; ; i++) {
+            final long due = startNanos + (long) (i * interval);
+            if (due >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            pool.execute(() -> record(scenario.execute(scenario.next()), due));
+        }
+        pool.shutdown();
+        if (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+            System.out.println("Gave up waiting for " + pool.shutdownNow().size() + " queued requests");
+        }
+        stopReporting(reporter);
+    }
+
+    private void record(final Scenario.Result result, final long sent) {
+        recorders.get(result.operation).recordValue(Math.max(1, (System.nanoTime() - sent) / 1000));
+        if (result.failed()) {
+            errors.get(result.operation).increment();
+        }
+    }
+
+    private ScheduledExecutorService startReporting() {
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        startNanos = System.nanoTime();
+        reporter.scheduleAtFixedRate(this::interval, 1, 1, TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    private void stopReporting(final ScheduledExecutorService reporter) throws InterruptedException {
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        interval();
+    }
+
+    /**
+     * Takes the histograms of the last interval, prints a line for it and, past the warmup, adds it
+     * to the run's totals.
+     */
+    private synchronized void interval() {
+        final long elapsed = System.nanoTime() - startNanos;
+        final boolean measured = elapsed > warmupNanos;
+        final Histogram all = new Histogram(3);
+        long failed = 0;
+        for (Operation operation : Operation.values()) {
+            final Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            final long errorCount = errors.get(operation).sumThenReset();
+            all.add(histogram);
+            failed += errorCount;
+            if (measured) {
+                totals.get(operation).add(histogram);
+                measuredErrors.merge(operation, errorCount, Long::sum);
+                if (log != null && histogram.getTotalCount() > 0) {
+                    histogram.setTag(operation.key);
+                    log.outputIntervalHistogram(histogram);
+                }
+            }
+        }
+        System.out.printf("%6.1fs %s %8d req/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms  errors %d%n",
+            elapsed / 1e9, measured ? "     " : "warmup", all.getTotalCount(),
+            millis(all.getValueAtPercentile(50)), millis(all.getValueAtPercentile(99)), millis(all.getMaxValue()), failed);
+    }
+
+    private synchronized void report(final PrintStream out, final long durationSeconds) {
+        out.println();
+        out.printf("%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+            "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        final Histogram all = new Histogram(3);
+        long failed = 0;
+        for (Operation operation : Operation.values()) {
+            final Histogram histogram = totals.get(operation);
+            if (histogram.getTotalCount() > 0) {
+                line(out, operation.key, histogram, measuredErrors.get(operation), durationSeconds);
+            }
+            all.add(histogram);
+            failed += measuredErrors.get(operation);
+        }
+        line(out, "all", all, failed, durationSeconds);
+    }
+
+    private static void line(final PrintStream out, final String name, final Histogram histogram, final long failed,
+                             final long durationSeconds) {
+        out.printf("%-16s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", name, histogram.getTotalCount(), failed,
+            histogram.getTotalCount() / (double) Math.max(1, durationSeconds),
+            millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+            millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(final long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,47 @@
+package io.microprofile.showcase.session.loadtest;
+
+/**
+ * The requests the driver sends, with the key used for them in {@code --mix} and their default
+ * weight. Writes only touch sessions the driver created itself.
+ */
+enum Operation {
+
+    /** GET /sessions */
+    LIST("list", 10),
+    /** GET /sessions?limit=20 */
+    PAGE("page", 10),
+    /** GET /sessions/{id} */
+    GET("get", 35),
+    /** GET /sessions/search?q= */
+    SEARCH("search", 10),
+    /** GET /speakers/{id}/sessions */
+    SPEAKER_SESSIONS("speakerSessions", 5),
+    /** GET /sessions/{id}/speakers */
+    SESSION_SPEAKERS("sessionSpeakers", 5),
+    /** POST /sessions */
+    CREATE("create", 10),
+    /** PUT /sessions/{id} */
+    UPDATE("update", 8),
+    /** PUT /sessions/{id}/speakers/{id} */
+    ADD_SPEAKER("addSpeaker", 3),
+    /** DELETE /sessions/{id} */
+    DELETE("delete", 4);
+
+    final String key;
+
+    final int defaultWeight;
+
+    Operation(final String key, final int defaultWeight) {
+        this.key = key;
+        this.defaultWeight = defaultWeight;
+    }
+
+    static Operation forKey(final String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key);
+    }
+}
@@ -0,0 +1,269 @@
+package io.microprofile.showcase.session.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * A mix of requests against one service. Reads go to the sessions and speakers the service held
+ * when the run started; writes go to sessions the scenario created, so a run leaves the original
+ * data as it found it, apart from whatever it created and did not get round to deleting.
+ */
+final class Scenario {
+
+    /**
+     * An operation as it was sent: writes fall back to a create when there is nothing to write to.
+     * A status of -1 means the request failed without a response.
+     */
+    static final class Result {
+
+        final Operation operation;
+
+        final int status;
+
+        Result(final Operation operation, final int status) {
+            this.operation = operation;
+            this.status = status;
+        }
+
+        boolean failed() {
+            return status < 200 || status >= 400;
+        }
+    }
+
+    private final String baseUrl;
+
+    private final List<String> sessionIds;
+
+    private final List<String> speakerIds;
+
+    private final List<String> words;
+
+    private final Operation[] picks;
+
+    private final ConcurrentLinkedQueue<String> created = new ConcurrentLinkedQueue<>();
+
+    private Scenario(final String baseUrl, final List<String> sessionIds, final List<String> speakerIds, final List<String> words,
+                     final Map<Operation, Integer> weights) {
+        this.baseUrl = baseUrl;
+        this.sessionIds = sessionIds;
+        this.speakerIds = speakerIds;
+        this.words = words;
+        final List<Operation> picks = new ArrayList<>();
+        weights.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                picks.add(operation);
+            }
+        });
+        if (picks.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operations");
+        }
+        this.picks = picks.toArray(new Operation[picks.size()]);
+    }
+
+    /**
+     * Reads the service's current sessions to pick ids, speakers and search terms from.
+     */
+    static Scenario connect(final String baseUrl, final Map<Operation, Integer> weights) throws IOException {
+        final String[] body = new String[1];
+        final int status = send("GET", new URL(baseUrl + "/sessions"), null, body);
+        if (status != 200) {
+            throw new IOException("GET /sessions returned " + status);
+        }
+        final List<String> sessionIds = new ArrayList<>();
+        final Set<String> speakerIds = new LinkedHashSet<>();
+        final Set<String> words = new LinkedHashSet<>();
+        try (JsonReader reader = Json.createReader(new StringReader(body[0]))) {
+            for (JsonObject session : reader.readArray().getValuesAs(JsonObject.class)) {
+                sessionIds.add(session.getString("id"));
+                final JsonArray speakers = session.getJsonArray("speakers");
+                if (speakers != null) {
+                    speakers.getValuesAs(JsonString.class).forEach(speaker -> speakerIds.add(speaker.getString()));
+                }
+                for (String word : session.getString("title", "").toLowerCase().split("[^\\p{L}\\p{Nd}]+")) {
+                    if (word.length() >= 5) {
+                        words.add(word);
+                    }
+                }
+            }
+        }
+        if (sessionIds.isEmpty() || speakerIds.isEmpty()) {
+            throw new IOException("The service has no sessions with speakers to run against");
+        }
+        return new Scenario(baseUrl, sessionIds, new ArrayList<>(speakerIds), new ArrayList<>(words), weights);
+    }
+
+    static Map<Operation, Integer> parseMix(final String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        if (mix == null) {
+            for (Operation operation : Operation.values()) {
+                weights.put(operation, operation.defaultWeight);
+            }
+            return weights;
+        }
+        for (String entry : mix.split(",")) {
+            final String[] pair = entry.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry " + entry);
+            }
+            weights.put(Operation.forKey(pair[0].trim()), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    Operation next() {
+        return picks[ThreadLocalRandom.current().nextInt(picks.length)];
+    }
+
+    Result execute(final Operation operation) {
+        try {
+            switch (operation) {
+                case LIST:
+                    return get(operation, "/sessions");
+                case PAGE:
+                    return get(operation, "/sessions?limit=20");
+                case GET:
+                    return get(operation, "/sessions/" + any(sessionIds));
+                case SEARCH:
+                    return get(operation, "/sessions/search?limit=20&q="
+                        + URLEncoder.encode(words.isEmpty() ? "session" : any(words), "UTF-8"));
+                case SPEAKER_SESSIONS:
+                    return get(operation, "/speakers/" + any(speakerIds) + "/sessions");
+                case SESSION_SPEAKERS:
+                    return get(operation, "/sessions/" + any(sessionIds) + "/speakers");
+                case CREATE:
+                    return create();
+                case UPDATE: {
+                    final String id = created.peek();
+                    return id == null ? create()
+                        : new Result(operation, send("PUT", url("/sessions/" + id), newSession(), null));
+                }
+                case ADD_SPEAKER: {
+                    final String id = created.peek();
+                    return id == null ? create()
+                        : new Result(operation, send("PUT", url("/sessions/" + id + "/speakers/" + any(speakerIds)), null, null));
+                }
+                case DELETE: {
+                    final String id = created.poll();
+                    return id == null ? create()
+                        : new Result(operation, send("DELETE", url("/sessions/" + id), null, null));
+                }
+                default:
+                    throw new IllegalArgumentException(operation.name());
+            }
+        } catch (IOException e) {
+            return new Result(operation, -1);
+        }
+    }
+
+    private Result get(final Operation operation, final String path) throws IOException {
+        return new Result(operation, send("GET", url(path), null, null));
+    }
+
+    private Result create() throws IOException {
+        final String[] body = new String[1];
+        final int status = send("POST", url("/sessions"), newSession(), body);
+        if (status == 200) {
+            try (JsonReader reader = Json.createReader(new StringReader(body[0]))) {
+                created.add(reader.readObject().getString("id"));
+            }
+        }
+        return new Result(Operation.CREATE, status);
+    }
+
+    private String newSession() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final StringWriter json = new StringWriter(2048);
+        try (JsonGenerator generator = Json.createGenerator(json)) {
+            generator.writeStartObject()
+                .write("id", "")
+                .write("title", text(6))
+                .write("abstract", text(150 + random.nextInt(100)))
+                .write("code", "LT" + random.nextInt(10000))
+                .write("type", random.nextBoolean() ? "Session" : "Workshop")
+                .writeStartArray("speakers");
+            for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                generator.write(any(speakerIds));
+            }
+            generator.writeEnd()
+                .write("schedule", random.nextInt(100))
+                .writeEnd();
+        }
+        return json.toString();
+    }
+
+    private String text(final int length) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(i == 0 ? "" : " ").append(words.isEmpty() ? "word" : any(words));
+        }
+        return text.toString();
+    }
+
+    private URL url(final String path) throws IOException {
+        return new URL(baseUrl + path);
+    }
+
+    private static String any(final List<String> values) {
+        return values.get(ThreadLocalRandom.current().nextInt(values.size()));
+    }
+
+    /**
+     * Sends a request and reads the whole response, so the connection goes back to the JDK's
+     * keep-alive pool.
+     *
+     * @param body where to put the response body, or null to discard it
+     */
+    private static int send(final String method, final URL url, final String json, final String[] body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        if (json != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        final InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try (InputStream response = in) {
+                final ByteArrayOutputStream bytes = body != null ? new ByteArrayOutputStream() : null;
+                final byte[] buffer = new byte[8192];
+                int count;
+                while ((count = response.read(buffer)) > 0) {
+                    if (bytes != null) {
+                        bytes.write(buffer, 0, count);
+                    }
+                }
+                if (bytes != null) {
+                    body[0] = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return status;
+    }
+}
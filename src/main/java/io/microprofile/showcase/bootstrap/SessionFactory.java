@@ -1,8 +1,7 @@
 package io.microprofile.showcase.bootstrap;
 
 import io.microprofile.showcase.session.Session;
-import java.util.Collection;
-import java.util.stream.Collectors;
+import javax.json.JsonObject;
 
 /**
  * @author Heiko Braun
@@ -11,9 +10,9 @@ import java.util.stream.Collectors;
 public class SessionFactory {
 
     public static Session fromBootstrap(final io.microprofile.showcase.bootstrap.Session bootstrapModel) {
-        final Session session = new Session(bootstrapModel.getId(), bootstrapModel.getUnderlying());
-        session.setSpeakers(bootstrapModel.getSpeakers());
-        session.setSchedule(Integer.valueOf(bootstrapModel.getSchedule()));
-        return session;
+        final JsonObject underlying = bootstrapModel.getUnderlying();
+        return new Session(bootstrapModel.getId(), underlying.getString("title", null), underlying.getString("abstract", null),
+            underlying.getString("code", null), underlying.getString("type", null),
+            bootstrapModel.getSpeakers(), Integer.valueOf(bootstrapModel.getSchedule()));
     }
 }
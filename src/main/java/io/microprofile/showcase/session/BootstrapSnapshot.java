@@ -0,0 +1,107 @@
+package io.microprofile.showcase.session;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.microprofile.showcase.bootstrap.BootstrapData;
+import io.microprofile.showcase.bootstrap.BootstrapDataProducer;
+import io.microprofile.showcase.bootstrap.SessionFactory;
+
+/**
+ * The bootstrap sessions, converted at build time into the snapshot format of {@link SessionCodec}
+ * and packaged with the classes, so a fresh store starts from one read of a binary file instead of
+ * parsing and converting the bootstrap JSON.
+ *
+ * The build runs {@link #main(String[])} after compiling; when the resource is missing or unreadable
+ * the store falls back to converting the bootstrap data at startup.
+ */
+public final class BootstrapSnapshot {
+
+    static final String RESOURCE = "META-INF/sessions-bootstrap.snapshot";
+
+    private static final Logger LOGGER = Logger.getLogger(BootstrapSnapshot.class.getName());
+
+    private BootstrapSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of the bootstrap data to the given file.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: BootstrapSnapshot <output file>");
+        }
+        final Path target = Paths.get(args[0]);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        final SessionSnapshot snapshot = fromBootstrap(new BootstrapDataProducer().load());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 16)) {
+            SessionCodec.writeSnapshot(out, snapshot.getVersion(), snapshot.getSessions());
+        }
+        LOGGER.log(Level.INFO, "Wrote {0} bootstrap sessions to {1}", new Object[] {snapshot.getSessions().size(), target});
+    }
+
+    /**
+     * Converts the bootstrap sessions, giving them consecutive store versions from 1.
+     */
+    static SessionSnapshot fromBootstrap(final BootstrapData bootstrapData) {
+        final List<Session> sessions = new ArrayList<>();
+        long version = 0;
+        for (io.microprofile.showcase.bootstrap.Session bootstrap : bootstrapData.getSessions()) {
+            sessions.add(SessionFactory.fromBootstrap(bootstrap).stored(bootstrap.getId(), ++version));
+        }
+        return new SessionSnapshot(version, sessions);
+    }
+
+    /**
+     * Reads the packaged snapshot, mapping it when it is a plain file.
+     *
+     * @return the snapshot, or empty when it is not packaged or cannot be read
+     */
+    static Optional<SessionSnapshot> load() {
+        final URL resource = BootstrapSnapshot.class.getClassLoader().getResource(RESOURCE);
+        if (resource == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(SessionCodec.readSnapshot(read(resource)));
+        } catch (IOException | IllegalArgumentException | URISyntaxException e) {
+            LOGGER.log(Level.WARNING, "Cannot read the bootstrap snapshot " + resource, e);
+            return Optional.empty();
+        }
+    }
+
+    private static ByteBuffer read(final URL resource) throws IOException, URISyntaxException {
+        if ("file".equals(resource.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Paths.get(resource.toURI()), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        try (InputStream in = resource.openStream()) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+            final byte[] buffer = new byte[1 << 16];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Reads a session sent as {@code application/cbor}, see {@link SessionCbor}. The same limits as
+ * for JSON apply, from the same {@code session.reader.*} settings, and are answered with the same
+ * 400 and 413 responses.
+ */
+@Provider
+@Consumes(SessionCbor.MEDIA_TYPE)
+public class CborSessionReader implements MessageBodyReader<Session> {
+
+    private final SessionReader limits = new SessionReader();
+
+    @Override
+    public boolean isReadable(Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
+        return clazz.equals(Session.class);
+    }
+
+    @Override
+    public Session readFrom(Class<Session> clazz, Type type, Annotation[] annotations, MediaType mediaType,
+                            MultivaluedMap<String, String> map, InputStream is) throws IOException, WebApplicationException {
+        final int maxBytes = limits.getMaxBytes();
+        final String length = map.getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (length != null && length.trim().matches("\\d+") && Long.parseLong(length.trim()) > maxBytes) {
+            throw limits.tooLarge();
+        }
+        // The body is read whole, since a session must be all of it; never more than the limit
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(Math.min(maxBytes, 4096) + 1);
+        final byte[] buffer = new byte[4096];
+        int count;
+        while ((count = is.read(buffer)) > 0) {
+            body.write(buffer, 0, count);
+            if (body.size() > maxBytes) {
+                throw limits.tooLarge();
+            }
+        }
+        try {
+            return SessionCbor.decode(ByteBuffer.wrap(body.toByteArray()), limits.getMaxStringLength(), limits.getMaxSpeakers());
+        } catch (IllegalArgumentException e) {
+            throw SessionReader.badRequest(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Writes a session, or a collection of sessions as a CBOR array, as {@code application/cbor}. Like
+ * the JSON writers, it only copies the encodings each session caches, see {@link Session#toCbor()}.
+ */
+@Provider
+@Produces(SessionCbor.MEDIA_TYPE)
+public class CborSessionWriter implements MessageBodyWriter<Object> {
+
+    @Override
+    public boolean isWriteable(Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
+        return clazz.equals(Session.class)
+            || Collection.class.isAssignableFrom(clazz) && SessionCollectionWriter.isSessionCollection(type);
+    }
+
+    @Override
+    public long getSize(Object entity, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object entity, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> map, OutputStream os) throws IOException, WebApplicationException {
+        if (entity instanceof Session) {
+            os.write(((Session) entity).toCbor());
+        }
+        else {
+            write((Collection<Session>) entity, os);
+        }
+    }
+
+    static void write(Collection<Session> sessions, OutputStream os) throws IOException {
+        os.write(SessionCbor.arrayHead(sessions.size()));
+        for (Session session : sessions) {
+            os.write(session.toCbor());
+        }
+    }
+}
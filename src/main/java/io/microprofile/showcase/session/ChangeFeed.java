@@ -0,0 +1,272 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * The store's changes as a stream of server-sent events, numbered from 1 in the order they
+ * happened:
+ * <pre>
+ * id: k3v9x2m1q8-42
+ * event: updated
+ * data: {"id":"...","title":...}
+ * </pre>
+ * Numbers start again with every process and each replica numbers its own, so event ids carry a
+ * prefix this process picks at startup. A client that resumes from an id with another prefix,
+ * after a restart or through another replica, is told to resync.
+ * Events are {@code created} and {@code updated} with the session, and {@code deleted} with just
+ * its id. The last {@code session.events.bufferSize} events are kept in a ring that all subscribers
+ * read from at their own position, so a subscriber costs no memory of its own. A subscriber that
+ * falls so far behind that the ring has moved past it, or that resumes from an event that is no
+ * longer kept, gets a {@code resync} event instead: it should reload the sessions and carry on
+ * from there.
+ *
+ * Each subscriber holds a request thread for as long as it is connected, so there are at most
+ * {@code session.events.maxSubscribers} of them.
+ *
+ * The feed listens from startup, so no write goes unnumbered. Writers only queue their change,
+ * which takes no lock; one thread numbers the changes in the order they were queued and wakes the
+ * subscribers.
+ */
+@ApplicationScoped
+public class ChangeFeed implements SessionListener {
+
+    static final String MEDIA_TYPE = "text/event-stream";
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeFeed.class.getName());
+
+    private static final int MAX_BATCH = 256;
+
+    private static final byte[] KEEPALIVE = ": keepalive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // Where a subscriber resumes from an event this process did not issue: past any it will keep
+    private static final long FOREIGN = Long.MAX_VALUE - 1;
+
+    @Inject
+    SessionStore store;
+
+    @Inject
+    @ConfigProperty(name="session.events.bufferSize", defaultValue="4096")
+    int bufferSize;
+
+    @Inject
+    @ConfigProperty(name="session.events.maxSubscribers", defaultValue="256")
+    int maxSubscribers;
+
+    @Inject
+    @ConfigProperty(name="session.events.keepaliveSeconds", defaultValue="15")
+    int keepaliveSeconds;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    // The prefix of this process's event ids
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    // Changes not yet numbered, in the order they happened
+    private final LinkedTransferQueue<Event> pending = new LinkedTransferQueue<>();
+
+    private ExecutorService sequencer;
+
+    // Guarded by this
+    private Event[] ring;
+    private long nextSequence = 1;
+
+    private static final class Event {
+
+        // Set once numbered, under the feed's monitor
+        long sequence;
+
+        final String type;
+
+        // The session after the change, or null when it was deleted
+        final Session session;
+
+        final String sessionId;
+
+        Event(final String type, final Session session, final String sessionId) {
+            this.type = type;
+            this.session = session;
+            this.sessionId = sessionId;
+        }
+
+        void writeTo(final String epoch, final OutputStream out) throws IOException {
+            out.write(("id: " + epoch + "-" + sequence + "\nevent: " + type + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            if (session != null) {
+                out.write(session.toJson());
+            }
+            else {
+                // Ids come from the store or from clients, so escape them as the JSON writer would
+                out.write(("{\"id\":" + SessionWriter.quote(sessionId) + "}").getBytes(StandardCharsets.UTF_8));
+            }
+            out.write('\n');
+            out.write('\n');
+        }
+    }
+
+    private void start(@Observes @Initialized(ApplicationScoped.class) final Object context) {
+        synchronized (this) {
+            ring = new Event[Math.max(1, bufferSize)];
+        }
+        sequencer = Executors.newSingleThreadExecutor(task -> {
+            final Thread thread = new Thread(task, "session-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sequencer.execute(this::sequence);
+        store.addListener(this);
+    }
+
+    @PreDestroy
+    private void stop() {
+        if (sequencer != null) {
+            sequencer.shutdownNow();
+        }
+    }
+
+    /**
+     * Called under the store's lock for the id, so it only queues the change.
+     */
+    @Override
+    public void changed(final Session previous, final Session current) {
+        final String type = current == null ? "deleted" : previous == null ? "created" : "updated";
+        pending.add(new Event(type, current, current != null ? current.getId() : previous.getId()));
+    }
+
+    /**
+     * Numbers the queued changes into the ring, as many at a time as are waiting.
+     */
+    private void sequence() {
+        final List<Event> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(pending.take());
+                pending.drainTo(batch, MAX_BATCH - 1);
+                synchronized (this) {
+                    for (Event event : batch) {
+                        event.sequence = nextSequence++;
+                        ring[(int) (event.sequence % ring.length)] = event;
+                    }
+                    notifyAll();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A stream of the events after the given one, or of new events only when there is none.
+     *
+     * @return the stream, or null when there are already as many subscribers as allowed
+     */
+    StreamingOutput subscribe(final String lastEventId) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            return null;
+        }
+        final long resumeAfter = parse(lastEventId);
+        return output -> {
+            try {
+                stream(resumeAfter, output);
+            } finally {
+                subscribers.decrementAndGet();
+            }
+        };
+    }
+
+    int getSubscribers() {
+        return subscribers.get();
+    }
+
+    private void stream(final long resumeAfter, final OutputStream output) throws IOException {
+        final List<Event> batch = new ArrayList<>(MAX_BATCH);
+        long next;
+        boolean resync;
+        synchronized (this) {
+            next = resumeAfter < 0 ? nextSequence : resumeAfter + 1;
+            resync = !retained(next);
+        }
+        output.write(("retry: 3000\n\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (resync || !retained(next)) {
+                        next = nextSequence;
+                        resync = true;
+                    }
+                    else if (next == nextSequence) {
+                        wait(TimeUnit.SECONDS.toMillis(keepaliveSeconds));
+                    }
+                    for (; next < nextSequence && batch.size() < MAX_BATCH && retained(next); next++) {
+                        batch.add(ring[(int) (next % ring.length)]);
+                    }
+                }
+                if (resync) {
+                    output.write(("id: " + epoch + "-" + (next - 1 - batch.size()) + "\nevent: resync\ndata: {\"version\":\""
+                        + store.token(store.getVersion()) + "\"}\n\n").getBytes(StandardCharsets.UTF_8));
+                    resync = false;
+                }
+                if (batch.isEmpty()) {
+                    output.write(KEEPALIVE);
+                }
+                for (Event event : batch) {
+                    event.writeTo(epoch, output);
+                }
+                batch.clear();
+                output.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Event subscriber went away", e);
+        }
+    }
+
+    /**
+     * Whether the event with this sequence number is still in the ring, or is the next one to come.
+     */
+    private boolean retained(final long sequence) {
+        return sequence <= nextSequence && sequence > nextSequence - 1 - ring.length && sequence >= 1;
+    }
+
+    /**
+     * The sequence number of an event id this process issued, -1 for none, or {@link #FOREIGN} for
+     * any other id, which the subscriber resyncs from.
+     */
+    private long parse(final String lastEventId) {
+        if (lastEventId == null || lastEventId.trim().isEmpty()) {
+            return -1;
+        }
+        final String id = lastEventId.trim();
+        if (!id.startsWith(epoch + "-")) {
+            return FOREIGN;
+        }
+        try {
+            return Math.max(0, Long.parseLong(id.substring(epoch.length() + 1)));
+        } catch (NumberFormatException e) {
+            return FOREIGN;
+        }
+    }
+}
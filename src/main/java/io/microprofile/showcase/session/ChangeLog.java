@@ -0,0 +1,141 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The latest change to every session id, in store version order: the live session for ids that
+ * exist, a tombstone for ids that were removed. Older changes to an id are dropped as newer ones
+ * arrive, so the log never holds more than one entry per id.
+ *
+ * Tombstones are kept up to a limit, oldest dropped first. The log then can no longer tell a
+ * client that has seen versions up to the dropped tombstone's which ids went away, so
+ * {@link #changes} refuses anything older: its horizon moves up to the dropped version.
+ */
+final class ChangeLog {
+
+    static final class Change {
+
+        final long version;
+
+        final String sessionId;
+
+        // Null for a tombstone
+        final Session session;
+
+        Change(final long version, final String sessionId, final Session session) {
+            this.version = version;
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+    }
+
+    private static final Comparator<Change> ORDER =
+        Comparator.<Change>comparingLong(change -> change.version).thenComparing(change -> change.sessionId);
+
+    private final ConcurrentSkipListSet<Change> changes = new ConcurrentSkipListSet<>(ORDER);
+
+    private final ConcurrentHashMap<String, Change> latest = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<Change> tombstones = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger tombstoneCount = new AtomicInteger();
+
+    private final int maxTombstones;
+
+    private volatile long horizon;
+
+    ChangeLog(final int maxTombstones) {
+        this.maxTombstones = maxTombstones;
+    }
+
+    /**
+     * Records the change to an id. Changes to one id must be recorded one at a time, in order.
+     *
+     * @param session the session after the change, or null when it was removed
+     */
+    void record(final String sessionId, final long version, final Session session) {
+        final Change change = new Change(version, sessionId, session);
+        final Change previous = latest.put(sessionId, change);
+        changes.add(change);
+        if (previous != null) {
+            changes.remove(previous);
+        }
+        if (session == null) {
+            tombstones.add(change);
+            if (tombstoneCount.incrementAndGet() > maxTombstones) {
+                expireTombstones();
+            }
+        }
+    }
+
+    /**
+     * Drops an id without a tombstone, for a session that was not removed but is no longer kept
+     * here. Clients that have it are not told to delete it.
+     */
+    void forget(final String sessionId) {
+        final Change previous = latest.remove(sessionId);
+        if (previous != null) {
+            changes.remove(previous);
+        }
+    }
+
+    private synchronized void expireTombstones() {
+        while (tombstoneCount.get() > maxTombstones) {
+            final Change tombstone = tombstones.poll();
+            if (tombstone == null) {
+                return;
+            }
+            tombstoneCount.decrementAndGet();
+            if (latest.remove(tombstone.sessionId, tombstone)) {
+                changes.remove(tombstone);
+            }
+            if (tombstone.version > horizon) {
+                horizon = tombstone.version;
+            }
+        }
+    }
+
+    /**
+     * Changes before this version may have been forgotten.
+     */
+    long getHorizon() {
+        return horizon;
+    }
+
+    void setHorizon(final long version) {
+        horizon = Math.max(horizon, version);
+    }
+
+    /**
+     * The latest change to each id changed in {@code (since, upTo]}, in version order. Since 0
+     * means the client has nothing, so tombstones are left out.
+     *
+     * @return the changes, or null when changes after {@code since} may have been forgotten
+     */
+    List<Change> changes(final long since, final long upTo) {
+        if (since != 0 && since < horizon) {
+            return null;
+        }
+        final List<Change> result = new ArrayList<>();
+        for (Change change : changes.tailSet(new Change(since + 1, "", null))) {
+            if (change.version > upTo) {
+                break;
+            }
+            if (change.session != null || since != 0) {
+                result.add(change);
+            }
+        }
+        // A tombstone may have expired while the changes were read
+        return since != 0 && since < horizon ? null : result;
+    }
+
+    int size() {
+        return changes.size();
+    }
+}
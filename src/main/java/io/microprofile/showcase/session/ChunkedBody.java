@@ -0,0 +1,140 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * A response body written on one thread and sent by the container on another, a chunk at a time,
+ * so work on an executor can stream its answer without holding all of it. At most {@link #CHUNKS}
+ * chunks of up to {@link #CHUNK} bytes wait to be sent; the writer waits while the client catches
+ * up, and fails once the container has stopped sending.
+ */
+final class ChunkedBody implements StreamingOutput {
+
+    static final int CHUNK = 8192;
+
+    static final int CHUNKS = 8;
+
+    // Sent after the last chunk, or instead of the rest when the writer failed
+    private static final byte[] END = new byte[0];
+    private static final byte[] FAILED = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS);
+
+    private volatile boolean closed;
+
+    /**
+     * Sends the chunks as they come. A writer that failed fails the response, so the client sees
+     * it cut short rather than complete.
+     */
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        try {
+            for (byte[] chunk = take(); chunk != END; chunk = take()) {
+                if (chunk == FAILED)
+                    throw new IOException("The response could not be completed");
+                output.write(chunk);
+                output.flush();
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Runs the body here, passing what it writes on in chunks. Each flush sends what has been
+     * written so far.
+     */
+    void fill(final RequestExecutors.Body body) throws IOException {
+        final Chunks output = new Chunks();
+        try {
+            body.writeTo(output);
+            output.flush();
+            put(END);
+        } catch (IOException | RuntimeException e) {
+            // What is still waiting goes unsent either way; there is room for the failure once it is dropped
+            chunks.clear();
+            chunks.offer(FAILED);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the writer: it fails on its next chunk. Called once the container is done with the
+     * response, however it went.
+     */
+    void close() {
+        closed = true;
+        chunks.clear();
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            return chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void put(final byte[] chunk) throws IOException {
+        try {
+            while (!closed) {
+                if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        throw new IOException("The response is no longer being sent");
+    }
+
+    /**
+     * The writer's side, which fills one chunk at a time.
+     */
+    private final class Chunks extends OutputStream {
+
+        private byte[] chunk = new byte[CHUNK];
+
+        private int count;
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (count == chunk.length)
+                flush();
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == chunk.length)
+                    flush();
+                final int copied = Math.min(length, chunk.length - count);
+                System.arraycopy(bytes, offset, chunk, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count == 0)
+                return;
+            final byte[] full = count == chunk.length ? chunk : Arrays.copyOf(chunk, count);
+            put(full);
+            if (full == chunk)
+                chunk = new byte[CHUNK];
+            count = 0;
+        }
+    }
+}
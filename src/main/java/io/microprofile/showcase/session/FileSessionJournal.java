@@ -0,0 +1,489 @@
+package io.microprofile.showcase.session;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A journal in a local directory: an append-only write-ahead log in numbered segments, plus a
+ * compacted snapshot of the whole store.
+ *
+ * All appends go through one writer thread, which drains whatever has queued up since its last
+ * write and writes it with a single gathering write, so concurrent writers share each write and
+ * fsync (group commit). When the log has grown by the configured number of records the journal
+ * compacts in the background: it starts a new segment, writes a snapshot of the store, and drops
+ * the segments the snapshot covers.
+ *
+ * Each record completes on its own once its group has been written. A group that fails fails all
+ * its records, and the segment is truncated back to where the group began, so no torn record is
+ * left for later records to be written after. When even that fails, the journal fails every write
+ * from then on. A thread's {@link #sync()} fails when any record it appended since its last sync
+ * failed.
+ *
+ * Recovery maps the snapshot and segments into memory and replays them. Every record carries the
+ * store version of its write and the latest version of each id wins, so the order of records in
+ * the log does not matter and anything already covered by the snapshot is skipped. Replay stops at
+ * the first torn or corrupt record of a segment.
+ */
+final class FileSessionJournal implements SessionJournal {
+
+    enum Fsync {
+        /** Every write returns only after the log is forced to disk. */
+        ALWAYS,
+        /** Writes return once written; the log is forced at a fixed interval. */
+        INTERVAL,
+        /** Writes return once written; forcing is left to the operating system. */
+        NEVER
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FileSessionJournal.class.getName());
+
+    private static final String SNAPSHOT = "sessions.snapshot";
+    private static final String SEGMENT_PREFIX = "sessions-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte STORED = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int MAX_GROUP = 4096;
+
+    private final Path directory;
+    private final Fsync fsync;
+    private final long fsyncIntervalMillis;
+    private final long compactAfterRecords;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private volatile boolean running;
+    // Set once the log could not be written or rolled back; every write fails from then on
+    private volatile IOException failure;
+    // The records each thread appended since its last sync, completed together
+    private final ThreadLocal<CompletableFuture<Void>> unsynced = new ThreadLocal<>();
+    private volatile Supplier<SessionSnapshot> snapshots;
+    private Thread writer;
+    private ExecutorService compactor;
+    private long nextSegment;
+
+    // Owned by the writer thread
+    private FileChannel log;
+    private boolean unforced;
+    private long lastForced;
+    private long appendedSinceCompaction;
+
+    FileSessionJournal(final Path directory, final Fsync fsync, final long fsyncIntervalMillis, final long compactAfterRecords) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.compactAfterRecords = compactAfterRecords;
+    }
+
+    /**
+     * A queued record, completed once it has been written, or a marker the writer thread completes
+     * once everything queued before it has been written (and, for a rotation, once the next segment
+     * is open).
+     */
+    private static final class Entry {
+
+        final ByteBuffer record;
+        final CompletableFuture<Void> done;
+        final boolean rotate;
+
+        Entry(final ByteBuffer record, final CompletableFuture<Void> done, final boolean rotate) {
+            this.record = record;
+            this.done = done;
+            this.rotate = rotate;
+        }
+    }
+
+    @Override
+    public SessionSnapshot recover() {
+        try {
+            Files.createDirectories(directory);
+            long version = 0;
+            final Map<String, Session> sessions = new HashMap<>();
+            final Path snapshotFile = directory.resolve(SNAPSHOT);
+            if (Files.exists(snapshotFile)) {
+                final SessionSnapshot snapshot = SessionCodec.readSnapshot(map(snapshotFile));
+                version = snapshot.getVersion();
+                for (Session session : snapshot.getSessions()) {
+                    sessions.put(session.getId(), session);
+                }
+            }
+
+            // Latest version seen per id, removals included, for records past the snapshot
+            final Map<String, Long> versions = new HashMap<>();
+            final long covered = version;
+            final TreeMap<Long, Path> segments = segments();
+            for (Path segment : segments.values()) {
+                final ByteBuffer records = map(segment);
+                while (records.remaining() >= 9) {
+                    final int length = records.getInt();
+                    final int checksum = records.getInt();
+                    if (length < 1 || length > records.remaining() || checksum != crc(records, length)) {
+                        LOGGER.log(Level.WARNING, "Ignoring torn or corrupt journal tail in {0}", segment);
+                        break;
+                    }
+                    final ByteBuffer record = records.slice();
+                    record.limit(length);
+                    records.position(records.position() + length);
+
+                    final byte type = record.get();
+                    final ByteBuffer payload = record.slice();
+                    final long recordVersion = payload.getLong(0);
+                    version = Math.max(version, recordVersion);
+                    if (recordVersion <= covered) {
+                        continue;
+                    }
+                    final String id = SessionCodec.readString((ByteBuffer) payload.duplicate().position(8));
+                    final Long seen = versions.get(id);
+                    if (seen != null && seen >= recordVersion) {
+                        continue;
+                    }
+                    versions.put(id, recordVersion);
+                    if (type == STORED) {
+                        sessions.put(id, SessionCodec.read(payload));
+                    }
+                    else {
+                        sessions.remove(id);
+                    }
+                }
+            }
+            nextSegment = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+            return new SessionSnapshot(version, new ArrayList<>(sessions.values()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover sessions from " + directory, e);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IllegalStateException("Corrupt session journal in " + directory, e);
+        }
+    }
+
+    @Override
+    public void start(final Supplier<SessionSnapshot> snapshots) {
+        this.snapshots = snapshots;
+        try {
+            log = openSegment(nextSegment++);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open session journal in " + directory, e);
+        }
+        lastForced = System.nanoTime();
+        running = true;
+        writer = new Thread(this::writeLoop, "session-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        compactor = Executors.newSingleThreadExecutor(task -> {
+            final Thread thread = new Thread(task, "session-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.log(Level.INFO, "Journaling sessions to {0} with fsync {1}", new Object[] {directory, fsync});
+    }
+
+    @Override
+    public void stored(final Session session) {
+        append(STORED, SessionCodec.encode(session));
+    }
+
+    @Override
+    public void removed(final String sessionId, final long version) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(version);
+            SessionCodec.writeString(out, sessionId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        append(REMOVED, bytes.toByteArray());
+    }
+
+    private void append(final byte type, final byte[] payload) {
+        final ByteBuffer record = ByteBuffer.allocate(9 + payload.length);
+        record.putInt(1 + payload.length);
+        record.putInt(0);
+        record.put(type);
+        record.put(payload);
+        record.flip();
+        final ByteBuffer body = record.duplicate();
+        body.position(8);
+        record.putInt(4, crc(body, body.remaining()));
+        final CompletableFuture<Void> done = enqueue(new Entry(record, new CompletableFuture<>(), false));
+        final CompletableFuture<Void> earlier = unsynced.get();
+        unsynced.set(earlier != null ? CompletableFuture.allOf(earlier, done) : done);
+    }
+
+    @Override
+    public void sync() {
+        final CompletableFuture<Void> appended = unsynced.get();
+        if (appended != null) {
+            unsynced.remove();
+            await(appended);
+        }
+    }
+
+    @Override
+    public void compact() {
+        // Compactions share the temporary snapshot file, so only one runs at a time
+        if (compacting.compareAndSet(false, true)) {
+            compactHoldingFlag();
+        }
+    }
+
+    private void compactHoldingFlag() {
+        try {
+            await(marker(true));
+            // Every segment before the one just opened is covered by a snapshot taken from here on
+            final long firstRetained = nextSegment - 1;
+            final SessionSnapshot snapshot = snapshots.get();
+            final Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                SessionCodec.writeSnapshot(out, snapshot.getVersion(), snapshot.getSessions());
+                channel.force(true);
+            }
+            Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (Map.Entry<Long, Path> segment : segments().headMap(firstRetained).entrySet()) {
+                Files.delete(segment.getValue());
+            }
+            LOGGER.log(Level.FINE, "Compacted session journal at version {0}", snapshot.getVersion());
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.log(Level.WARNING, "Session journal compaction failed; the log is kept", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever was queued as the writer stopped
+        for (Entry entry = queue.poll(); entry != null; entry = queue.poll()) {
+            entry.done.completeExceptionally(closed());
+        }
+        compactor.shutdown();
+        try {
+            log.force(false);
+            log.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot close session journal", e);
+        }
+    }
+
+    private CompletableFuture<Void> marker(final boolean rotate) {
+        return enqueue(new Entry(null, new CompletableFuture<>(), rotate));
+    }
+
+    /**
+     * Queues an entry for the writer thread, or fails it once the journal is closed or failed, so
+     * that a write racing shutdown is reported as failed rather than acknowledged and lost.
+     */
+    private CompletableFuture<Void> enqueue(final Entry entry) {
+        if (failure != null) {
+            entry.done.completeExceptionally(failure);
+        }
+        else if (!running) {
+            entry.done.completeExceptionally(closed());
+        }
+        else {
+            queue.add(entry);
+            // The writer may have stopped as it was queued; whoever takes it back completes it
+            if (!running && queue.remove(entry)) {
+                entry.done.completeExceptionally(closed());
+            }
+        }
+        return entry.done;
+    }
+
+    private IOException closed() {
+        return new IOException("The session journal in " + directory + " is closed");
+    }
+
+    private static void await(final CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        final List<Entry> group = new ArrayList<>(MAX_GROUP);
+        while (running || !queue.isEmpty()) {
+            try {
+                final Entry first = queue.poll(fsync == Fsync.INTERVAL ? fsyncIntervalMillis : 1000, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    group.add(first);
+                    queue.drainTo(group, MAX_GROUP - 1);
+                }
+                write(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void write(final List<Entry> group) {
+        if (failure != null) {
+            group.forEach(entry -> entry.done.completeExceptionally(failure));
+            return;
+        }
+        final List<ByteBuffer> pending = new ArrayList<>(group.size());
+        final List<CompletableFuture<Void>> written = new ArrayList<>(group.size());
+        // Where the group began in the current segment, to roll back to
+        long start = -1;
+        try {
+            start = log.size();
+            for (Entry entry : group) {
+                if (entry.record != null) {
+                    pending.add(entry.record);
+                    written.add(entry.done);
+                    continue;
+                }
+                if (entry.rotate) {
+                    writeFully(pending);
+                    log.force(false);
+                    log.close();
+                    // Forced into the closed segment, so nothing after can take them back
+                    written.forEach(done -> done.complete(null));
+                    written.clear();
+                    log = openSegment(nextSegment++);
+                    start = 0;
+                    unforced = false;
+                    appendedSinceCompaction = 0;
+                }
+                written.add(entry.done);
+            }
+            writeFully(pending);
+
+            final long now = System.nanoTime();
+            if (unforced && (fsync == Fsync.ALWAYS
+                    || fsync == Fsync.INTERVAL && now - lastForced >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis))) {
+                log.force(false);
+                unforced = false;
+                lastForced = now;
+            }
+            written.forEach(done -> done.complete(null));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot write session journal", e);
+            rollBack(start, e);
+            written.forEach(done -> done.completeExceptionally(e));
+        }
+
+        if (appendedSinceCompaction >= compactAfterRecords && compacting.compareAndSet(false, true)) {
+            compactor.execute(this::compactHoldingFlag);
+        }
+    }
+
+    /**
+     * Truncates the segment back to where a failed group began, so that the records after it are
+     * not written after a torn one. When that fails too, the journal fails every write from now on.
+     */
+    private void rollBack(final long start, final IOException cause) {
+        if (start >= 0 && log.isOpen()) {
+            try {
+                log.truncate(start);
+                log.force(true);
+                return;
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+        failure = cause;
+        LOGGER.log(Level.SEVERE, "Session journal in {0} cannot be rolled back; every write fails from now on", directory);
+    }
+
+    private void writeFully(final List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        final ByteBuffer[] array = buffers.toArray(new ByteBuffer[buffers.size()]);
+        long remaining = 0;
+        for (ByteBuffer buffer : array) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= log.write(array);
+        }
+        appendedSinceCompaction += array.length;
+        unforced = true;
+        buffers.clear();
+    }
+
+    private FileChannel openSegment(final long number) throws IOException {
+        return FileChannel.open(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX)),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private TreeMap<Long, Path> segments() throws IOException {
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring unexpected file {0} in the session journal", file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static ByteBuffer map(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int crc(final ByteBuffer buffer, final int length) {
+        final ByteBuffer range = buffer.duplicate();
+        range.limit(range.position() + length);
+        final CRC32 crc = new CRC32();
+        crc.update(range);
+        return (int) crc.getValue();
+    }
+}
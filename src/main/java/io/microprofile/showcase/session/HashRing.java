@@ -0,0 +1,67 @@
+package io.microprofile.showcase.session;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A consistent-hash ring: each node is placed at many points around a 64-bit ring, and a key
+ * belongs to the node at the first point at or after the key's own hash. Adding or removing a node
+ * only moves the keys between its points and the ones before them, about one node's share, rather
+ * than reshuffling everything.
+ */
+final class HashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    private final Set<String> nodes;
+
+    /**
+     * @param pointsPerNode how many points each node gets; more spread the keys more evenly
+     */
+    HashRing(final Collection<String> nodes, final int pointsPerNode) {
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        for (String node : this.nodes) {
+            for (int i = 0; i < pointsPerNode; i++) {
+                // Ties between nodes go to the one that sorts first, so every ring agrees
+                points.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * The node the key belongs to, or null when the ring is empty.
+     */
+    String owner(final String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        final Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, with a final mix so that similar keys land far apart.
+     */
+    static long hash(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,172 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * A replica reached over HTTP, at {@code POST <base>/replication/pull}. The request is the
+ * version vector, the response the batch:
+ * <pre>
+ * {"a/k2x9":12,"b/k2xa":3}
+ *
+ * {"full":false,"more":false,"vector":{},"ops":[
+ *   {"origin":"a/k2x9","seq":13,"lamport":1510000000123,"id":"...","session":{...}},
+ *   {"origin":"b/k2xa","seq":4,"lamport":1510000000456,"id":"...","session":null}]}
+ * </pre>
+ * Sessions in a batch get the same checks as a client's, see {@link SessionReader}.
+ */
+final class HttpReplicationPeer implements Replicator.Peer {
+
+    static final String PATH = "replication/pull";
+
+    private final URL url;
+
+    private final int connectTimeoutMillis;
+
+    private final int readTimeoutMillis;
+
+    private final SessionReader sessionReader;
+
+    HttpReplicationPeer(final URL base, final int connectTimeoutMillis, final int readTimeoutMillis,
+                        final SessionReader sessionReader) throws IOException {
+        this.url = new URL(base, PATH);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.sessionReader = sessionReader;
+    }
+
+    @Override
+    public ReplicationLog.Batch pull(final Map<String, Long> vector, final int max) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url + "?max=" + max).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept", "application/json");
+        try {
+            try (OutputStream out = connection.getOutputStream()) {
+                writeVector(vector, out);
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(url + " answered " + connection.getResponseCode());
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return readBatch(in, sessionReader);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+
+    static void writeVector(final Map<String, Long> vector, final OutputStream out) throws IOException {
+        final StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Long> entry : vector.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(SessionWriter.quote(entry.getKey())).append(':').append(entry.getValue());
+        }
+        out.write(json.append('}').toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Map<String, Long> readVector(final InputStream in) {
+        try (JsonReader reader = Json.createReader(in)) {
+            return vector(reader.readObject());
+        }
+    }
+
+    private static Map<String, Long> vector(final JsonObject json) {
+        final Map<String, Long> vector = new HashMap<>();
+        for (Map.Entry<String, JsonValue> entry : json.entrySet()) {
+            if (!(entry.getValue() instanceof JsonNumber)) {
+                throw new JsonException("Sequence numbers must be numbers");
+            }
+            vector.put(entry.getKey(), ((JsonNumber) entry.getValue()).longValue());
+        }
+        return vector;
+    }
+
+    static void writeBatch(final ReplicationLog.Batch batch, final OutputStream out) throws IOException {
+        out.write(("{\"full\":" + batch.full + ",\"more\":" + batch.more + ",\"vector\":").getBytes(StandardCharsets.UTF_8));
+        writeVector(batch.vector, out);
+        out.write(",\"ops\":[".getBytes(StandardCharsets.UTF_8));
+        boolean first = true;
+        for (ReplicationLog.Op op : batch.ops) {
+            out.write(((first ? "" : ",") + "{\"origin\":" + SessionWriter.quote(op.origin) + ",\"seq\":" + op.seq
+                + ",\"lamport\":" + op.lamport + ",\"id\":" + SessionWriter.quote(op.sessionId) + ",\"session\":")
+                .getBytes(StandardCharsets.UTF_8));
+            if (op.session != null) {
+                out.write(op.session.toJson());
+            }
+            else {
+                out.write("null".getBytes(StandardCharsets.UTF_8));
+            }
+            out.write('}');
+            first = false;
+        }
+        out.write("]}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws JsonException when the batch is malformed or holds a session that is not valid
+     */
+    static ReplicationLog.Batch readBatch(final InputStream in, final SessionReader sessions) {
+        try (JsonReader reader = Json.createReader(in)) {
+            final JsonObject json = reader.readObject();
+            final JsonArray array = field(json, "ops", JsonArray.class);
+            final List<ReplicationLog.Op> ops = new ArrayList<>(array.size());
+            for (JsonValue value : array) {
+                if (!(value instanceof JsonObject)) {
+                    throw new JsonException("Replication ops must be objects");
+                }
+                final JsonObject op = (JsonObject) value;
+                final JsonValue session = op.get("session");
+                ops.add(new ReplicationLog.Op(field(op, "origin", JsonString.class).getString(),
+                    field(op, "seq", JsonNumber.class).longValue(), field(op, "lamport", JsonNumber.class).longValue(),
+                    field(op, "id", JsonString.class).getString(),
+                    session == null || session == JsonValue.NULL ? null : sessions.read(field(op, "session", JsonObject.class))));
+            }
+            return new ReplicationLog.Batch(vector(field(json, "vector", JsonObject.class)), ops, flag(json, "full"),
+                flag(json, "more"));
+        }
+    }
+
+    private static <T extends JsonValue> T field(final JsonObject json, final String name, final Class<T> type) {
+        final JsonValue value = json.get(name);
+        if (!type.isInstance(value)) {
+            throw new JsonException("Replication " + name + " is missing or not a " + type.getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    private static boolean flag(final JsonObject json, final String name) {
+        final JsonValue value = json.get(name);
+        if (value != JsonValue.TRUE && value != JsonValue.FALSE) {
+            throw new JsonException("Replication " + name + " must be true or false");
+        }
+        return value == JsonValue.TRUE;
+    }
+}
@@ -0,0 +1,192 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.ws.rs.WebApplicationException;
+
+/**
+ * Bulk import of newline-delimited JSON sessions. Records are parsed one line at a time, saved to
+ * the store in batches, and answered with one result line per input line, in input order:
+ * <pre>
+ * {"line":1,"id":"..."}
+ * {"line":2,"status":400,"error":"..."}
+ * </pre>
+ * Blank lines are skipped without a result. No more than {@code session.reader.maxBytes} of a line
+ * is held: a longer line is skipped to its end and answered with a 413, and the import goes on. The import runs on the thread that calls
+ * {@link #write}, so callers run it on the bulk executor, which streams the results as each batch
+ * is flushed, see {@link RequestExecutors.Bulkhead#stream}.
+ */
+class NdjsonImport {
+
+    static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final JsonGeneratorFactory GENERATORS = Json.createGeneratorFactory(Collections.emptyMap());
+
+    private final SessionStore store;
+    private final SessionReader reader;
+    private final InputStream input;
+
+    NdjsonImport(final SessionStore store, final SessionReader reader, final InputStream input) {
+        this.store = store;
+        this.reader = reader;
+        this.input = input;
+    }
+
+    /**
+     * Imports every line, writing the results as each batch is saved.
+     */
+    void write(final OutputStream output) throws IOException {
+        final Lines lines = new Lines(input, reader.getMaxBytes());
+        final ByteArrayOutputStream results = new ByteArrayOutputStream(BATCH_SIZE * 64);
+        final List<Session> batch = new ArrayList<>(BATCH_SIZE);
+        final List<Integer> batchLines = new ArrayList<>(BATCH_SIZE);
+        // Errors found while parsing the current batch, in line order with the batch
+        final List<WebApplicationException> batchErrors = new ArrayList<>(BATCH_SIZE);
+
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.next()) != null) {
+            lineNumber++;
+            if (!lines.tooLong() && line.trim().isEmpty()) {
+                continue;
+            }
+            batchLines.add(lineNumber);
+            try {
+                if (lines.tooLong()) {
+                    throw reader.tooLarge();
+                }
+                batch.add(reader.read(line));
+                batchErrors.add(null);
+            } catch (WebApplicationException e) {
+                batch.add(null);
+                batchErrors.add(e);
+            }
+            if (batchLines.size() == BATCH_SIZE) {
+                flush(batch, batchLines, batchErrors, results, output);
+            }
+        }
+        flush(batch, batchLines, batchErrors, results, output);
+    }
+
+    private void flush(final List<Session> batch, final List<Integer> lines, final List<WebApplicationException> errors,
+                       final ByteArrayOutputStream results, final OutputStream output) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        final List<Session> valid = new ArrayList<>(batch.size());
+        for (Session session : batch) {
+            if (session != null) {
+                valid.add(session);
+            }
+        }
+        final Iterator<Session> saved = store.saveAll(valid).iterator();
+
+        results.reset();
+        for (int i = 0; i < lines.size(); i++) {
+            final JsonGenerator result = GENERATORS.createGenerator(results, StandardCharsets.UTF_8)
+                .writeStartObject()
+                .write("line", lines.get(i));
+            if (errors.get(i) == null) {
+                result.write("id", saved.next().getId());
+            }
+            else {
+                final WebApplicationException error = errors.get(i);
+                result.write("status", error.getResponse().getStatus())
+                    .write("error", error.getMessage() != null ? error.getMessage() : "invalid session");
+            }
+            result.writeEnd().close();
+            results.write('\n');
+        }
+        results.writeTo(output);
+        output.flush();
+
+        batch.clear();
+        lines.clear();
+        errors.clear();
+    }
+
+    /**
+     * The input a line at a time, as UTF-8 without the line break, holding no more than
+     * {@code maxBytes} of a line however long it is.
+     */
+    private static final class Lines {
+
+        private final InputStream input;
+        private final int maxBytes;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+        private byte[] line = new byte[256];
+        private boolean tooLong;
+
+        Lines(final InputStream input, final int maxBytes) {
+            this.input = input;
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * The next line, or null at the end of the input. A line longer than {@code maxBytes} is
+         * read to its end without being kept, and comes back empty with {@link #tooLong()} set.
+         */
+        String next() throws IOException {
+            int length = 0;
+            boolean overflowed = false;
+            boolean ended = false;
+            while (!ended) {
+                if (position == limit) {
+                    limit = input.read(buffer);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        if (length == 0 && !overflowed) {
+                            return null;
+                        }
+                        break;
+                    }
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+                ended = end < limit;
+                // One byte over the limit is kept, for a carriage return before the line break
+                final int kept = overflowed ? 0 : Math.min(end - position, maxBytes + 1 - length);
+                if (kept < end - position) {
+                    overflowed = true;
+                }
+                if (length + kept > line.length) {
+                    line = Arrays.copyOf(line, Math.min(maxBytes + 1, Math.max(line.length * 2, length + kept)));
+                }
+                System.arraycopy(buffer, position, line, length, kept);
+                length += kept;
+                position = ended ? end + 1 : end;
+            }
+            if (!overflowed && length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            tooLong = overflowed || length > maxBytes;
+            return tooLong ? "" : new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Whether the line last returned was longer than {@code maxBytes}.
+         */
+        boolean tooLong() {
+            return tooLong;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Passes requests for one session that belongs to another instance on to it, see
+ * {@link Partitioning}, and answers with its answer. With {@code session.partition.redirect} the
+ * client is sent there with a 307 instead, which saves this instance the round trip when clients
+ * can reach every instance.
+ */
+@Provider
+@ApplicationScoped
+public class PartitionFilter implements ContainerRequestFilter {
+
+    @Inject
+    Partitioning partitioning;
+
+    @Override
+    public void filter(final ContainerRequestContext request) throws IOException {
+        if (!partitioning.isEnabled() || (request.getHeaderString(Partitioning.FORWARDED) != null
+            && partitioning.isPeer(request.getHeaderString(Partitioning.PEER)))) {
+            return;
+        }
+        final UriInfo uriInfo = request.getUriInfo();
+        final String sessionId = uriInfo.getPathParameters().getFirst("sessionId");
+        if (sessionId == null || partitioning.isLocal(sessionId)) {
+            return;
+        }
+        final String owner = partitioning.owner(sessionId);
+        if (partitioning.isRedirect())
+            request.abortWith(Response.temporaryRedirect(
+                URI.create(owner).resolve(uriInfo.getBaseUri().relativize(uriInfo.getRequestUri()))).build());
+        else
+            request.abortWith(partitioning.forward(request, owner));
+    }
+}
@@ -0,0 +1,51 @@
+package io.microprofile.showcase.session;
+
+import java.io.InputStream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.JsonException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Takes the sessions another instance hands over after the partitions change, see
+ * {@link Partitioning}. They keep their stamps, so a handed-over session never replaces a newer
+ * write made here. Only another instance, with the shared secret, may hand sessions over.
+ */
+@Path("partition")
+@ApplicationScoped
+public class PartitionResource {
+
+    @Inject
+    private SessionStore sessionStore;
+
+    @Inject
+    private Partitioning partitioning;
+
+    private final SessionReader sessionReader = new SessionReader();
+
+    @POST
+    @Path("/handoff")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response handoff(@HeaderParam(Partitioning.PEER) final String peer,
+                            final InputStream batch) throws Exception {
+        if (!partitioning.isEnabled())
+            return Response.status(404).build();
+        if (!partitioning.isPeer(peer))
+            return Response.status(403).build();
+
+        final ReplicationLog.Batch received;
+        try {
+            received = HttpReplicationPeer.readBatch(batch, sessionReader);
+        } catch (JsonException e) {
+            return Response.status(400).build();
+        }
+        sessionStore.replicate(received.ops);
+        return Response.noContent().build();
+    }
+}
@@ -0,0 +1,485 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+/**
+ * Splits the sessions between the instances listed in {@code session.partition.nodes}, in the
+ * form {@link Peers} reads, on a {@link HashRing}: each instance stores only the sessions whose ids
+ * hash to it. Without nodes every instance stores everything, as before.
+ *
+ * <ul>
+ *     <li>New sessions are given ids that hash to the instance that creates them.</li>
+ *     <li>Requests for one session are passed on to its owner by {@link PartitionFilter}.</li>
+ *     <li>Listings and searches ask every other instance for its part, with the {@link #LOCAL}
+ *     header, and merge the answers; see {@link #gather}.</li>
+ * </ul>
+ *
+ * The nodes are looked up again every {@code session.partition.refreshMillis}. When they change,
+ * the sessions that now belong elsewhere are handed to their new owners in the background, in
+ * batches of {@code session.partition.handoffBatch}, at {@code POST <node>partition/handoff}. A
+ * session is removed here only once its owner has it, so until then requests for it may miss.
+ *
+ * This instance is the node whose host is one of its own addresses, or
+ * {@code session.partition.self} when several share a host.
+ *
+ * Instances prove to each other that a request comes from a peer with the shared
+ * {@code session.partition.secret} in the {@link #PEER} header. The {@link #LOCAL} and
+ * {@link #FORWARDED} headers and handed-off sessions are only taken from a peer, and peers are not
+ * rate limited. Without a secret nothing is partitioned.
+ *
+ * On shutdown this instance drains: it hands every session it holds to its owner on the ring
+ * without it, so the others have them before it is gone.
+ */
+@ApplicationScoped
+public class Partitioning {
+
+    /**
+     * Asks for this instance's part only.
+     */
+    static final String LOCAL = "X-Session-Local";
+
+    /**
+     * Marks a request already passed on by another instance, which is never passed on again.
+     */
+    static final String FORWARDED = "X-Session-Forwarded";
+
+    /**
+     * Carries the shared secret on requests from one instance to another.
+     */
+    static final String PEER = "X-Session-Peer";
+
+    static final String HANDOFF_PATH = "partition/handoff";
+
+    private static final Logger LOGGER = Logger.getLogger(Partitioning.class.getName());
+
+    // Headers copied from a forwarded request and from its answer
+    private static final String[] REQUEST_HEADERS = {HttpHeaders.ACCEPT, HttpHeaders.CONTENT_TYPE,
+        HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH};
+
+    private static final String[] RESPONSE_HEADERS = {HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG,
+        HttpHeaders.LOCATION, HttpHeaders.VARY, "Link", "Retry-After"};
+
+    @Inject
+    SessionStore store;
+
+    @Inject
+    MetricRegistry metrics;
+
+    @Inject
+    @ConfigProperty(name="session.partition.nodes")
+    Optional<String> nodes;
+
+    @Inject
+    @ConfigProperty(name="session.partition.self")
+    Optional<String> self;
+
+    @Inject
+    @ConfigProperty(name="session.partition.secret")
+    Optional<String> secret;
+
+    @Inject
+    @ConfigProperty(name="session.partition.pointsPerNode", defaultValue="128")
+    int pointsPerNode;
+
+    @Inject
+    @ConfigProperty(name="session.partition.refreshMillis", defaultValue="5000")
+    long refreshMillis;
+
+    @Inject
+    @ConfigProperty(name="session.partition.handoffBatch", defaultValue="500")
+    int handoffBatch;
+
+    @Inject
+    @ConfigProperty(name="session.partition.redirect", defaultValue="false")
+    boolean redirect;
+
+    @Inject
+    @ConfigProperty(name="session.partition.gatherThreads", defaultValue="8")
+    int gatherThreads;
+
+    @Inject
+    @ConfigProperty(name="session.partition.connectTimeoutMillis", defaultValue="1000")
+    int connectTimeoutMillis;
+
+    @Inject
+    @ConfigProperty(name="session.partition.readTimeoutMillis", defaultValue="10000")
+    int readTimeoutMillis;
+
+    private volatile HashRing ring;
+
+    private volatile String local;
+
+    private volatile boolean draining;
+
+    private ScheduledExecutorService rebalancer;
+
+    private ExecutorService gatherers;
+
+    private final LongAdder forwarded = new LongAdder();
+
+    private final LongAdder handedOff = new LongAdder();
+
+    private final LongAdder handoffFailures = new LongAdder();
+
+    private final SessionReader sessionReader = new SessionReader();
+
+    private void start(@Observes @Initialized(ApplicationScoped.class) final Object context) {
+        if (!nodes.isPresent() || nodes.get().trim().isEmpty()) {
+            return;
+        }
+        if (!secret.isPresent() || secret.get().isEmpty()) {
+            LOGGER.log(Level.WARNING, "Not partitioning: set session.partition.secret, shared by {0}", nodes.get());
+            return;
+        }
+        final List<URL> members = Peers.resolve(nodes.get(), true);
+        local = self.map(url -> url.endsWith("/") ? url : url + "/").orElse(members.stream()
+            .filter(Peers::isLocal).map(URL::toString).findFirst().orElse(null));
+        if (local == null) {
+            LOGGER.log(Level.WARNING, "Not partitioning: none of {0} is this instance, set session.partition.self",
+                nodes.get());
+            return;
+        }
+        ring = new HashRing(names(members), pointsPerNode);
+        // While draining no id is this instance's, and the few sessions created meanwhile stay here
+        store.ownIds(id -> draining || isLocal(id));
+
+        gauge("nodes", () -> (long) ring.getNodes().size());
+        gauge("forwarded", forwarded::sum);
+        gauge("handedOff", handedOff::sum);
+        gauge("handoffFailures", handoffFailures::sum);
+
+        gatherers = Executors.newFixedThreadPool(gatherThreads, task -> {
+            final Thread thread = new Thread(task, "session-partition-gather");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebalancer = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "session-partition-rebalance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first round hands off whatever the journal restored that belongs elsewhere
+        rebalancer.scheduleWithFixedDelay(this::refresh, 0, refreshMillis, TimeUnit.MILLISECONDS);
+        LOGGER.log(Level.INFO, "Partitioning as {0} among {1}", new Object[] {local, ring.getNodes()});
+    }
+
+    @PreDestroy
+    private void stop() {
+        if (rebalancer == null) {
+            return;
+        }
+        rebalancer.shutdownNow();
+        try {
+            // A round under way finishes before the drain starts
+            rebalancer.awaitTermination(readTimeoutMillis, TimeUnit.MILLISECONDS);
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            gatherers.shutdownNow();
+        }
+    }
+
+    /**
+     * Hands every session held here to its owner once this instance has left the ring.
+     */
+    private void drain() {
+        final Set<String> others = new TreeSet<>(ring.getNodes());
+        others.remove(local);
+        if (others.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Not draining: {0} is the last partition node", local);
+            return;
+        }
+        final HashRing without = new HashRing(others, pointsPerNode);
+        draining = true;
+        ring = without;
+        rebalance(without);
+        final int left = store.getSnapshot().getSessions().size();
+        if (left > 0) {
+            LOGGER.log(Level.WARNING, "Drained {0} with {1} sessions not handed off", new Object[] {local, left});
+        }
+    }
+
+    boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * Whether the request carries the shared secret, so comes from another instance.
+     */
+    boolean isPeer(final String token) {
+        return isEnabled() && token != null && MessageDigest.isEqual(
+            secret.get().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The base URL of the instance the session belongs to.
+     */
+    String owner(final String sessionId) {
+        return ring.owner(sessionId);
+    }
+
+    boolean isLocal(final String sessionId) {
+        final HashRing current = ring;
+        return current == null || local.equals(current.owner(sessionId));
+    }
+
+    boolean isRedirect() {
+        return redirect;
+    }
+
+    private Set<String> names(final List<URL> members) {
+        final Set<String> names = new TreeSet<>();
+        for (URL member : members) {
+            names.add(member.toString());
+        }
+        // This instance stays in its own ring even while its name does not resolve to it
+        names.add(local);
+        return names;
+    }
+
+    private void refresh() {
+        try {
+            final Set<String> members = names(Peers.resolve(nodes.get(), true));
+            if (!members.equals(ring.getNodes())) {
+                LOGGER.log(Level.INFO, "Partition nodes changed from {0} to {1}", new Object[] {ring.getNodes(), members});
+                ring = new HashRing(members, pointsPerNode);
+            }
+            rebalance(ring);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not rebalance partitions", e);
+        }
+    }
+
+    /**
+     * Hands every session that belongs elsewhere to its owner. Sessions that change while on their
+     * way stay here, and go in the next round. Those handed off are dropped without being reported
+     * as removed, see {@link SessionStore#handedOff}.
+     */
+    private void rebalance(final HashRing current) {
+        final Map<String, List<Session>> moving = new HashMap<>();
+        for (Session session : store.getSnapshot().getSessions()) {
+            final String owner = current.owner(session.getId());
+            if (!local.equals(owner)) {
+                moving.computeIfAbsent(owner, o -> new ArrayList<>()).add(session);
+            }
+        }
+        for (Map.Entry<String, List<Session>> entry : moving.entrySet()) {
+            final List<Session> sessions = entry.getValue();
+            for (int start = 0; start < sessions.size(); start += handoffBatch) {
+                final List<Session> batch = sessions.subList(start, Math.min(start + handoffBatch, sessions.size()));
+                try {
+                    handOff(entry.getKey(), batch);
+                } catch (IOException e) {
+                    handoffFailures.increment();
+                    LOGGER.log(Level.FINE, "Could not hand sessions off to " + entry.getKey(), e);
+                    break;
+                }
+                for (Session session : batch) {
+                    try {
+                        if (store.handedOff(session.getId(), session.getStamp()).isPresent()) {
+                            handedOff.increment();
+                        }
+                    } catch (ConcurrentModificationException e) {
+                        // Changed since it was sent; the next round sends it again
+                    }
+                }
+            }
+        }
+    }
+
+    private void handOff(final String owner, final List<Session> sessions) throws IOException {
+        final List<ReplicationLog.Op> ops = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            ops.add(ReplicationLog.Op.of(session));
+        }
+        final HttpURLConnection connection = open(new URL(new URL(owner), HANDOFF_PATH));
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        try {
+            try (OutputStream out = connection.getOutputStream()) {
+                HttpReplicationPeer.writeBatch(new ReplicationLog.Batch(Collections.emptyMap(), ops, false, false), out);
+            }
+            if (connection.getResponseCode() / 100 != 2) {
+                throw new IOException(owner + " answered " + connection.getResponseCode());
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Asks every other instance for its part of the answer to the request, given relative to the
+     * application's base URI, in parallel. Fails with a 503 when any of them cannot answer, since a
+     * listing with a partition missing would look complete.
+     */
+    List<List<Session>> gather(final URI request) {
+        final List<Future<List<Session>>> parts = new ArrayList<>();
+        for (String node : ring.getNodes()) {
+            if (!node.equals(local)) {
+                parts.add(gatherers.submit(() -> fetch(new URL(new URL(node), request.toString()))));
+            }
+        }
+        final List<List<Session>> sessions = new ArrayList<>(parts.size());
+        try {
+            for (Future<List<Session>> part : parts) {
+                sessions.add(part.get());
+            }
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.FINE, "Could not gather " + request, e.getCause());
+            throw new WebApplicationException(Response.status(503).header("Retry-After", 1).build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(Response.status(503).header("Retry-After", 1).build());
+        } finally {
+            for (Future<List<Session>> part : parts) {
+                part.cancel(true);
+            }
+        }
+        return sessions;
+    }
+
+    private List<Session> fetch(final URL url) throws IOException {
+        final HttpURLConnection connection = open(url);
+        connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        connection.setRequestProperty(LOCAL, "true");
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(url + " answered " + connection.getResponseCode());
+            }
+            try (InputStream in = connection.getInputStream(); JsonReader reader = Json.createReader(in)) {
+                final JsonArray array = reader.readArray();
+                final List<Session> sessions = new ArrayList<>(array.size());
+                for (JsonValue value : array) {
+                    if (!(value instanceof JsonObject)) {
+                        throw new JsonException(url + " answered with something other than sessions");
+                    }
+                    sessions.add(sessionReader.read((JsonObject) value));
+                }
+                return sessions;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Passes the request on to the given instance and answers with whatever it answers.
+     */
+    Response forward(final ContainerRequestContext request, final String owner) throws IOException {
+        forwarded.increment();
+        final URI relative = request.getUriInfo().getBaseUri().relativize(request.getUriInfo().getRequestUri());
+        final HttpURLConnection connection = open(new URL(new URL(owner), relative.toString()));
+        connection.setRequestMethod(request.getMethod());
+        connection.setRequestProperty(FORWARDED, local);
+        for (String header : REQUEST_HEADERS) {
+            final String value = request.getHeaderString(header);
+            if (value != null) {
+                connection.setRequestProperty(header, value);
+            }
+        }
+        try {
+            if (request.hasEntity()) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    copy(request.getEntityStream(), out);
+                }
+            }
+            final int status = connection.getResponseCode();
+            final Response.ResponseBuilder response = Response.status(status);
+            for (String header : RESPONSE_HEADERS) {
+                final String value = connection.getHeaderField(header);
+                if (value != null) {
+                    response.header(header, value);
+                }
+            }
+            final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try {
+                    copy(in, body);
+                } finally {
+                    in.close();
+                }
+                if (body.size() > 0) {
+                    response.entity(body.toByteArray());
+                }
+            }
+            return response.build();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty(PEER, secret.get());
+        return connection;
+    }
+
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private void gauge(final String name, final Gauge<?> gauge) {
+        final String qualified = "io.microprofile.showcase.session.Partitioning." + name;
+        if (metrics.getGauges().get(qualified) == null) {
+            metrics.register(qualified, gauge);
+        }
+    }
+}
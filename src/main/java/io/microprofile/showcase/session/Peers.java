@@ -0,0 +1,76 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Other instances of this service, listed in configuration as comma-separated entries that are
+ * either a base URL, such as {@code http://session-1:9080/}, or {@code dns:<name>:<port>} for
+ * every address the name resolves to. With a headless Kubernetes service as the name, that is
+ * every ready pod, however many the autoscaler runs.
+ */
+final class Peers {
+
+    private static final Logger LOGGER = Logger.getLogger(Peers.class.getName());
+
+    private static final String DNS = "dns:";
+
+    private Peers() {
+    }
+
+    /**
+     * The base URLs of the listed instances, each ending in a slash, looking names up afresh.
+     * Entries that cannot be resolved are left out.
+     *
+     * @param includeLocal whether to keep addresses of this host that a name resolves to; URLs are
+     * always kept, so that several instances on one host can list each other
+     */
+    static List<URL> resolve(final String peers, final boolean includeLocal) {
+        final List<URL> urls = new ArrayList<>();
+        for (String entry : peers.split(",")) {
+            final String peer = entry.trim();
+            try {
+                if (peer.startsWith(DNS)) {
+                    final int port = peer.lastIndexOf(':');
+                    final String name = peer.substring(DNS.length(), port);
+                    for (InetAddress address : InetAddress.getAllByName(name)) {
+                        if (includeLocal || !isLocal(address)) {
+                            final String host = address instanceof Inet6Address
+                                ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+                            urls.add(new URL("http", host, Integer.parseInt(peer.substring(port + 1)), "/"));
+                        }
+                    }
+                }
+                else if (!peer.isEmpty()) {
+                    urls.add(new URL(peer.endsWith("/") ? peer : peer + "/"));
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not resolve " + peer, e);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Whether the URL's host is this one. Only the host is compared, so instances told apart by
+     * port alone need their own URL set explicitly.
+     */
+    static boolean isLocal(final URL url) {
+        try {
+            return isLocal(InetAddress.getByName(url.getHost()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isLocal(final InetAddress address) throws IOException {
+        return address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null;
+    }
+}
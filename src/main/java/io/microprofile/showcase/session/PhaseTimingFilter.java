@@ -0,0 +1,223 @@
+package io.microprofile.showcase.session;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Timer;
+
+/**
+ * Times every resource method in phases, each its own timer named after the method:
+ * <ul>
+ *     <li>{@code <method>.parse}: reading the request entity</li>
+ *     <li>{@code <method>.queue}: waiting for an executor, for the methods that run on one, see
+ *     {@link RequestExecutors}</li>
+ *     <li>{@code <method>.store}: running the resource method and the work it hands to an
+ *     executor, which is where the store is used</li>
+ *     <li>{@code <method>.serialize}: writing the response entity</li>
+ * </ul>
+ * The size of every response entity goes to {@code SessionResource.responseBytes}, and the total to
+ * {@code SessionResource.bytesSerialized}.
+ *
+ * A request with {@code Prefer: server-timing} gets the parse, queue and store phases back in a
+ * {@code Server-Timing} header. Serialization is not in it, since the headers are sent before the
+ * entity is written.
+ */
+@Provider
+@ApplicationScoped
+public class PhaseTimingFilter implements ContainerRequestFilter, ContainerResponseFilter, ReaderInterceptor, WriterInterceptor {
+
+    private static final String TIMING = PhaseTimingFilter.class.getName();
+
+    private static final String PREFER_SERVER_TIMING = "server-timing";
+
+    // The timing of the request the resource method runs for, on the thread it runs on
+    private static final ThreadLocal<Timing> CURRENT = new ThreadLocal<>();
+
+    @Inject
+    MetricRegistry metrics;
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    private final ConcurrentHashMap<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+    private volatile Histogram responseBytes;
+
+    private volatile Counter bytesSerialized;
+
+    /**
+     * The phases of one request, kept in its properties.
+     */
+    static final class Timing {
+
+        final Timer[] timers;
+
+        final long started = System.nanoTime();
+
+        long parse;
+
+        // Set from the executor the request waited for, or -1
+        volatile long queue = -1;
+
+        long store;
+
+        Timing(final Timer[] timers) {
+            this.timers = timers;
+        }
+
+        /**
+         * Records how long the request waited for an executor.
+         */
+        void queued(final long nanos) {
+            queue = nanos;
+        }
+    }
+
+    /**
+     * The timing of the current request, on the thread its resource method runs on, or null.
+     */
+    static Timing current() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request) {
+        final Method method = resourceInfo.getResourceMethod();
+        if (method != null) {
+            final Timing timing = new Timing(timers.computeIfAbsent(method, this::register));
+            request.setProperty(TIMING, timing);
+            CURRENT.set(timing);
+        }
+        else {
+            CURRENT.remove();
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(final ReaderInterceptorContext context) throws IOException {
+        final Timing timing = (Timing) context.getProperty(TIMING);
+        if (timing == null) {
+            return context.proceed();
+        }
+        final long started = System.nanoTime();
+        try {
+            return context.proceed();
+        } finally {
+            timing.parse += System.nanoTime() - started;
+        }
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request, final ContainerResponseContext response) {
+        final Timing timing = (Timing) request.getProperty(TIMING);
+        if (timing == null) {
+            return;
+        }
+        if (CURRENT.get() == timing) {
+            CURRENT.remove();
+        }
+        final long queue = Math.max(0, timing.queue);
+        timing.store = System.nanoTime() - timing.started - timing.parse - queue;
+        if (timing.parse > 0) {
+            timing.timers[0].update(timing.parse, TimeUnit.NANOSECONDS);
+        }
+        if (timing.queue >= 0) {
+            timing.timers[1].update(queue, TimeUnit.NANOSECONDS);
+        }
+        timing.timers[2].update(timing.store, TimeUnit.NANOSECONDS);
+
+        final String prefer = request.getHeaderString("Prefer");
+        if (prefer != null && prefer.toLowerCase(Locale.ROOT).contains(PREFER_SERVER_TIMING)) {
+            response.getHeaders().add("Server-Timing", String.format(Locale.ROOT, "parse;dur=%.3f, queue;dur=%.3f, store;dur=%.3f",
+                timing.parse / 1e6, queue / 1e6, timing.store / 1e6));
+            response.getHeaders().add("Preference-Applied", PREFER_SERVER_TIMING);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(final WriterInterceptorContext context) throws IOException {
+        final Timing timing = (Timing) context.getProperty(TIMING);
+        if (timing == null) {
+            context.proceed();
+            return;
+        }
+        final CountingOutputStream counted = new CountingOutputStream(context.getOutputStream());
+        context.setOutputStream(counted);
+        final long started = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            timing.timers[3].update(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            responseBytes.update(counted.count);
+            bytesSerialized.inc(counted.count);
+        }
+    }
+
+    private Timer[] register(final Method method) {
+        if (responseBytes == null) {
+            responseBytes = metrics.histogram(metadata("io.microprofile.showcase.session.SessionResource.responseBytes",
+                MetricType.HISTOGRAM, MetricUnits.BYTES));
+            bytesSerialized = metrics.counter(metadata("io.microprofile.showcase.session.SessionResource.bytesSerialized",
+                MetricType.COUNTER, MetricUnits.BYTES));
+        }
+        final String prefix = method.getDeclaringClass().getName() + "." + method.getName() + ".";
+        return new Timer[] {
+            metrics.timer(metadata(prefix + "parse", MetricType.TIMER, MetricUnits.NANOSECONDS)),
+            metrics.timer(metadata(prefix + "queue", MetricType.TIMER, MetricUnits.NANOSECONDS)),
+            metrics.timer(metadata(prefix + "store", MetricType.TIMER, MetricUnits.NANOSECONDS)),
+            metrics.timer(metadata(prefix + "serialize", MetricType.TIMER, MetricUnits.NANOSECONDS))
+        };
+    }
+
+    private static Metadata metadata(final String name, final MetricType type, final String unit) {
+        final Metadata metadata = new Metadata(name, type, unit);
+        metadata.addTags("app=session");
+        return metadata;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
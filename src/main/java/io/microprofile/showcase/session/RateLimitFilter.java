@@ -0,0 +1,275 @@
+package io.microprofile.showcase.session;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+/**
+ * Limits how fast each client may call each resource method, so that one client sending too much
+ * slows down only itself. Every client has a token bucket per method, refilled at
+ * {@code rate} requests per second and holding at most {@code burst}. A request that finds the
+ * bucket empty is answered 429 with a Retry-After, and counted in {@code <method>.rateLimited}.
+ *
+ * Limits are set per method, falling back to the defaults:
+ * <pre>
+ * session.ratelimit.rate=50
+ * session.ratelimit.burst=100
+ * session.ratelimit.SessionResource.allSessions.rate=10
+ * </pre>
+ * A rate of 0 turns the limit off. Clients are told apart by their address, or by the header named
+ * in {@code session.ratelimit.clientHeader}, such as an API key or client address set by a
+ * gateway, on requests from one of the comma-separated addresses in
+ * {@code session.ratelimit.trustedProxies}. The header is ignored on requests from anywhere else,
+ * since a client could otherwise make up a new value for each request. Requests from other partitions, see {@link Partitioning}, are
+ * never limited: they carry a request that was limited where it came in.
+ *
+ * Each bucket is a single number, the time at which it will be full again, so a request takes
+ * it with one compare-and-set and never waits on a lock. Buckets are spread over
+ * independent tables, and a bucket that has been full for {@code session.ratelimit.idleSeconds}
+ * is dropped, one table at a time. A table holds at most its share of
+ * {@code session.ratelimit.maxClients} buckets; new clients that find it full share one bucket
+ * until idle ones are dropped, so a flood of new clients is limited as one.
+ */
+@Provider
+@ApplicationScoped
+public class RateLimitFilter implements ContainerRequestFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(RateLimitFilter.class.getName());
+
+    private static final int STRIPES = 16;
+
+    // Least time between two sweeps for idle buckets
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    @Inject
+    MetricRegistry metrics;
+
+    @Inject
+    Config config;
+
+    @Inject
+    Partitioning partitioning;
+
+    @Inject
+    @ConfigProperty(name="session.ratelimit.rate", defaultValue="50")
+    double defaultRate;
+
+    @Inject
+    @ConfigProperty(name="session.ratelimit.burst", defaultValue="100")
+    int defaultBurst;
+
+    @Inject
+    @ConfigProperty(name="session.ratelimit.clientHeader")
+    Optional<String> clientHeader;
+
+    @Inject
+    @ConfigProperty(name="session.ratelimit.trustedProxies")
+    Optional<String> trustedProxies;
+
+    @Inject
+    @ConfigProperty(name="session.ratelimit.idleSeconds", defaultValue="60")
+    int idleSeconds;
+
+    @Inject
+    @ConfigProperty(name="session.ratelimit.maxClients", defaultValue="100000")
+    int maxClients;
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Context
+    HttpServletRequest servletRequest;
+
+    private final ConcurrentHashMap<Method, Limit> limits = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    private volatile int sweepStripe;
+
+    private Set<String> proxies = Collections.emptySet();
+
+    /**
+     * The limit on one method, and every client's bucket for it.
+     */
+    private final class Limit {
+
+        // Time a request adds to a bucket's refill, and how far ahead of now a bucket may be refilled
+        final long interval;
+
+        final long capacity;
+
+        final Counter rejected;
+
+        @SuppressWarnings("unchecked")
+        final ConcurrentHashMap<String, AtomicLong>[] stripes = new ConcurrentHashMap[STRIPES];
+
+        // Shared by the clients that find their table full
+        final AtomicLong overflow = new AtomicLong(System.nanoTime());
+
+        final int bucketsPerStripe = Math.max(1, maxClients / STRIPES);
+
+        Limit(final double rate, final int burst, final Counter rejected) {
+            this.interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            this.capacity = interval * Math.max(1, burst);
+            this.rejected = rejected;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new ConcurrentHashMap<>();
+            }
+        }
+
+        /**
+         * Takes a token from the client's bucket.
+         *
+         * @return 0 when the request may go ahead, or else the nanoseconds until it could
+         */
+        long acquire(final String client, final long now) {
+            final ConcurrentHashMap<String, AtomicLong> stripe = stripes[(client.hashCode() & 0x7fffffff) % STRIPES];
+            AtomicLong bucket = stripe.get(client);
+            if (bucket == null) {
+                bucket = stripe.size() < bucketsPerStripe ? stripe.computeIfAbsent(client, key -> new AtomicLong(now)) : overflow;
+            }
+            while (true) {
+                final long full = bucket.get();
+                final long next = Math.max(full, now) + interval;
+                if (next - now > capacity) {
+                    return next - now - capacity;
+                }
+                if (bucket.compareAndSet(full, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        void sweep(final int stripe, final long now, final long idle) {
+            for (Iterator<AtomicLong> buckets = stripes[stripe].values().iterator(); buckets.hasNext();) {
+                if (now - buckets.next().get() > idle) {
+                    buckets.remove();
+                }
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (ConcurrentHashMap<String, AtomicLong> stripe : stripes) {
+                size += stripe.size();
+            }
+            return size;
+        }
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request) {
+        final Method method = resourceInfo.getResourceMethod();
+        if (method == null || partitioning.isPeer(request.getHeaderString(Partitioning.PEER))) {
+            return;
+        }
+        final Limit limit = limits.computeIfAbsent(method, this::limit);
+        if (limit.interval == 0) {
+            return;
+        }
+        final long now = System.nanoTime();
+        sweep(now);
+        final long wait = limit.acquire(client(request), now);
+        if (wait > 0) {
+            limit.rejected.inc();
+            request.abortWith(Response.status(429)
+                .header(HttpHeaders.RETRY_AFTER, (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1))
+                .type(MediaType.TEXT_PLAIN).entity("Too many requests").build());
+        }
+    }
+
+    private String client(final ContainerRequestContext request) {
+        final String address = servletRequest.getRemoteAddr();
+        if (clientHeader.isPresent() && address != null && proxies.contains(address)) {
+            final String key = request.getHeaderString(clientHeader.get());
+            if (key != null && !key.isEmpty()) {
+                return key;
+            }
+        }
+        return address != null ? address : "";
+    }
+
+    /**
+     * Drops idle buckets from one table of every limit, at most once per interval, on whichever
+     * request thread gets there first.
+     */
+    private void sweep(final long now) {
+        final long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL)) {
+            return;
+        }
+        final int stripe = sweepStripe;
+        sweepStripe = (stripe + 1) % STRIPES;
+        final long idle = TimeUnit.SECONDS.toNanos(idleSeconds);
+        for (Limit limit : limits.values()) {
+            limit.sweep(stripe, now, idle);
+        }
+    }
+
+    @PostConstruct
+    private void start() {
+        if (trustedProxies.isPresent()) {
+            final Set<String> addresses = new HashSet<>();
+            for (String address : trustedProxies.get().split(",")) {
+                if (!address.trim().isEmpty()) {
+                    addresses.add(address.trim());
+                }
+            }
+            proxies = addresses;
+        }
+        if (clientHeader.isPresent() && proxies.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Ignoring {0}: no session.ratelimit.trustedProxies to take it from",
+                clientHeader.get());
+        }
+        final String clients = "io.microprofile.showcase.session.RateLimitFilter.clients";
+        if (metrics.getGauges().get(clients) == null) {
+            metrics.register(clients, (Gauge<Long>) () -> {
+                long size = 0;
+                for (Limit limit : limits.values()) {
+                    size += limit.size();
+                }
+                return size;
+            });
+        }
+    }
+
+    private Limit limit(final Method method) {
+        final String endpoint = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        final double rate = config.getOptionalValue("session.ratelimit." + endpoint + ".rate", Double.class).orElse(defaultRate);
+        final int burst = config.getOptionalValue("session.ratelimit." + endpoint + ".burst", Integer.class).orElse(defaultBurst);
+        final Metadata metadata = new Metadata(method.getDeclaringClass().getName() + "." + method.getName() + ".rateLimited",
+            MetricType.COUNTER, MetricUnits.NONE);
+        metadata.addTags("app=session");
+        return new Limit(rate, burst, metrics.counter(metadata));
+    }
+}
@@ -0,0 +1,268 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The writes a replica knows of, kept so they can be passed on to other replicas. Every write is
+ * numbered by the replica it was made on, its origin, from 1 up without gaps, and the log keeps
+ * each origin's writes in that order. How far a replica has got with each origin is then a
+ * single number per origin, its version vector, and all it needs from another replica is the
+ * writes past that.
+ *
+ * Replicas take writes in different orders, so writes to the same session are decided by their
+ * stamps instead: a Lamport clock, never behind the wall clock, then the origin to break ties.
+ * The write with the greater stamp wins wherever it arrives, so replicas that have seen the same
+ * writes hold the same sessions. Removals are kept as tombstones so they win the same way.
+ *
+ * Each origin's oldest writes are dropped past {@code maxEntries}. A replica that needs writes no
+ * longer kept is sent the whole state instead, see {@link Batch#full}.
+ */
+final class ReplicationLog {
+
+    /**
+     * One write: a session stored, or removed when {@link #session} is null.
+     */
+    static final class Op {
+
+        final String origin;
+
+        // Position in the origin's log, or 0 for state sent outside the log
+        final long seq;
+
+        final long lamport;
+
+        final String sessionId;
+
+        final Session session;
+
+        Op(final String origin, final long seq, final long lamport, final String sessionId, final Session session) {
+            this.origin = origin;
+            this.seq = seq;
+            this.lamport = lamport;
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+
+        /**
+         * The write that left the session as it is, outside any log.
+         */
+        static Op of(final Session session) {
+            return new Op(session.getOrigin() != null ? session.getOrigin() : "", 0, session.getLamport(),
+                session.getId(), session);
+        }
+
+        /**
+         * Whether this write wins over one with the given stamp.
+         */
+        boolean newerThan(final long otherLamport, final String otherOrigin) {
+            if (lamport != otherLamport) {
+                return lamport > otherLamport;
+            }
+            return origin.compareTo(otherOrigin != null ? otherOrigin : "") > 0;
+        }
+    }
+
+    /**
+     * What one replica sends another.
+     */
+    static final class Batch {
+
+        // When full, the sender's version vector as of before the state was read
+        final Map<String, Long> vector;
+
+        final List<Op> ops;
+
+        // The ops are the sender's whole state rather than log entries
+        final boolean full;
+
+        // More log entries are waiting
+        final boolean more;
+
+        Batch(final Map<String, Long> vector, final List<Op> ops, final boolean full, final boolean more) {
+            this.vector = vector;
+            this.ops = ops;
+            this.full = full;
+            this.more = more;
+        }
+    }
+
+    private static final class OriginLog {
+
+        // Guarded by this
+        final ArrayDeque<Op> ops = new ArrayDeque<>();
+        long last;
+
+        long first() {
+            return ops.isEmpty() ? last + 1 : ops.peekFirst().seq;
+        }
+    }
+
+    private final String origin;
+
+    private final int maxEntries;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final ConcurrentHashMap<String, OriginLog> logs = new ConcurrentHashMap<>();
+
+    /**
+     * @param origin this replica's name for its own writes; it must differ between restarts, since
+     * numbering starts again from 1
+     * @param maxEntries the most writes kept per origin, or 0 to keep none when not replicating
+     */
+    ReplicationLog(final String origin, final int maxEntries) {
+        this.origin = origin;
+        this.maxEntries = maxEntries;
+        // In the vector from the start, so a replica that has taken this one's whole state says so
+        if (isEnabled()) {
+            log(origin);
+        }
+    }
+
+    String getOrigin() {
+        return origin;
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * The stamp for a new write on this replica.
+     */
+    long tick() {
+        final long now = System.currentTimeMillis();
+        return clock.updateAndGet(current -> Math.max(current + 1, now));
+    }
+
+    /**
+     * Moves the clock past a stamp seen from another replica, so writes here come after it.
+     */
+    void observe(final long lamport) {
+        clock.accumulateAndGet(lamport, Math::max);
+    }
+
+    /**
+     * Appends a write made on this replica.
+     *
+     * @param session the session written, or null when it was removed
+     */
+    void local(final String sessionId, final long lamport, final Session session) {
+        if (!isEnabled()) {
+            return;
+        }
+        final OriginLog log = log(origin);
+        synchronized (log) {
+            append(log, new Op(origin, log.last + 1, lamport, sessionId, session));
+        }
+    }
+
+    /**
+     * Appends a write from another replica when it is the next one from its origin. Writes are only
+     * appended once applied, since the vector then tells other replicas they are in the state.
+     *
+     * @return whether it was appended; otherwise it was already known, or came too early
+     */
+    boolean accept(final Op op) {
+        final OriginLog log = log(op.origin);
+        synchronized (log) {
+            if (op.seq != log.last + 1) {
+                return false;
+            }
+            append(log, op);
+            return true;
+        }
+    }
+
+    /**
+     * Records that the writes up to the vector are reflected here without being in the log, after
+     * taking another replica's whole state. Replicas asking for them get the whole state in turn.
+     */
+    void skipTo(final Map<String, Long> vector) {
+        for (Map.Entry<String, Long> entry : vector.entrySet()) {
+            final OriginLog log = log(entry.getKey());
+            synchronized (log) {
+                if (entry.getValue() > log.last) {
+                    log.ops.clear();
+                    log.last = entry.getValue();
+                }
+            }
+        }
+    }
+
+    private void append(final OriginLog log, final Op op) {
+        log.ops.addLast(op);
+        log.last = op.seq;
+        while (log.ops.size() > maxEntries) {
+            log.ops.pollFirst();
+        }
+    }
+
+    private OriginLog log(final String origin) {
+        return logs.computeIfAbsent(origin, key -> new OriginLog());
+    }
+
+    /**
+     * The last write known from each origin.
+     */
+    Map<String, Long> vector() {
+        final Map<String, Long> vector = new HashMap<>();
+        for (Map.Entry<String, OriginLog> entry : logs.entrySet()) {
+            synchronized (entry.getValue()) {
+                vector.put(entry.getKey(), entry.getValue().last);
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Up to {@code max} writes that a replica at the given vector has not seen, in each origin's
+     * order.
+     *
+     * @return the writes, or null when some of them are no longer kept
+     */
+    Batch since(final Map<String, Long> vector, final int max) {
+        final List<Op> ops = new ArrayList<>();
+        boolean more = false;
+        for (Map.Entry<String, OriginLog> entry : logs.entrySet()) {
+            final long seen = vector.getOrDefault(entry.getKey(), 0L);
+            final OriginLog log = entry.getValue();
+            synchronized (log) {
+                if (seen >= log.last) {
+                    continue;
+                }
+                if (seen + 1 < log.first()) {
+                    return null;
+                }
+                for (Op op : log.ops) {
+                    if (op.seq <= seen) {
+                        continue;
+                    }
+                    if (ops.size() == max) {
+                        more = true;
+                        break;
+                    }
+                    ops.add(op);
+                }
+            }
+        }
+        return new Batch(Collections.emptyMap(), ops, false, more);
+    }
+
+    int size() {
+        int size = 0;
+        for (OriginLog log : logs.values()) {
+            synchronized (log) {
+                size += log.ops.size();
+            }
+        }
+        return size;
+    }
+}
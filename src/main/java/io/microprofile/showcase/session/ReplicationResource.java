@@ -0,0 +1,50 @@
+package io.microprofile.showcase.session;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.JsonException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * The other end of {@link HttpReplicationPeer}: answers other replicas' pulls.
+ */
+@Path("replication")
+@ApplicationScoped
+public class ReplicationResource {
+
+    @Inject
+    private ReplicationService replicationService;
+
+    @POST
+    @Path("/pull")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response pull(final InputStream vector, @QueryParam("max") @DefaultValue("1000") final int max) throws Exception {
+        final Replicator replicator = replicationService.getReplicator();
+        if (replicator == null)
+            return Response.status(404).build();
+        if (max < 1)
+            return Response.status(400).build();
+
+        final Map<String, Long> seen;
+        try {
+            seen = HttpReplicationPeer.readVector(vector);
+        } catch (JsonException | ClassCastException e) {
+            return Response.status(400).build();
+        }
+        final ReplicationLog.Batch batch = replicator.serve(seen, max);
+        final StreamingOutput output = out -> HttpReplicationPeer.writeBatch(batch, out);
+        return Response.ok(output).build();
+    }
+}
@@ -0,0 +1,160 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+/**
+ * Replicates the store between the replicas listed in {@code session.replication.peers}, see
+ * {@link Replicator} and {@link Peers}. Names are looked up again on every round, and this
+ * replica's own addresses among them are skipped.
+ *
+ * Every {@code session.replication.intervalMillis} each peer is pulled from until it has nothing
+ * more. Without peers nothing is replicated.
+ *
+ * Tombstones of removed sessions are kept for {@code session.replication.tombstoneSeconds}, a day
+ * by default; a replica away for longer may bring back sessions removed meanwhile.
+ *
+ * Replicas are named by {@code session.replication.nodeId}, by default the host name, which is the
+ * pod name under Kubernetes. Writes are numbered afresh on every start, so they are logged under
+ * the name and the start time.
+ */
+@ApplicationScoped
+public class ReplicationService {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicationService.class.getName());
+
+    @Inject
+    SessionStore store;
+
+    @Inject
+    MetricRegistry metrics;
+
+    @Inject
+    @ConfigProperty(name="session.replication.peers")
+    Optional<String> peers;
+
+    @Inject
+    @ConfigProperty(name="session.replication.nodeId")
+    Optional<String> nodeId;
+
+    @Inject
+    @ConfigProperty(name="session.replication.intervalMillis", defaultValue="500")
+    long intervalMillis;
+
+    @Inject
+    @ConfigProperty(name="session.replication.maxLogEntries", defaultValue="100000")
+    int maxLogEntries;
+
+    @Inject
+    @ConfigProperty(name="session.replication.batchSize", defaultValue="1000")
+    int batchSize;
+
+    @Inject
+    @ConfigProperty(name="session.replication.connectTimeoutMillis", defaultValue="1000")
+    int connectTimeoutMillis;
+
+    @Inject
+    @ConfigProperty(name="session.replication.readTimeoutMillis", defaultValue="10000")
+    int readTimeoutMillis;
+
+    @Inject
+    @ConfigProperty(name="session.replication.tombstoneSeconds", defaultValue="86400")
+    long tombstoneSeconds;
+
+    private volatile Replicator replicator;
+
+    private ScheduledExecutorService puller;
+
+    private final LongAdder applied = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final SessionReader sessionReader = new SessionReader();
+
+    private void start(@Observes @Initialized(ApplicationScoped.class) final Object context) {
+        if (!peers.isPresent() || peers.get().trim().isEmpty()) {
+            return;
+        }
+        final String host = System.getenv("HOSTNAME");
+        final String node = nodeId.orElse(host != null && !host.isEmpty() ? host : UUID.randomUUID().toString());
+        final String origin = node + "/" + Long.toString(System.currentTimeMillis(), 36);
+        store.enableReplication(origin, maxLogEntries);
+        replicator = new Replicator(store, batchSize);
+
+        gauge("logSize", () -> (long) store.getReplicationLog().size());
+        gauge("tombstones", () -> (long) store.getTombstoneCount());
+        gauge("applied", applied::sum);
+        gauge("pullFailures", failures::sum);
+
+        puller = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "session-replication");
+            thread.setDaemon(true);
+            return thread;
+        });
+        puller.scheduleWithFixedDelay(this::pullAll, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        puller.scheduleWithFixedDelay(this::pruneTombstones, 1, 1, TimeUnit.MINUTES);
+        LOGGER.log(Level.INFO, "Replicating as {0} with {1}", new Object[] {origin, peers.get()});
+    }
+
+    @PreDestroy
+    private void stop() {
+        if (puller != null) {
+            puller.shutdownNow();
+        }
+    }
+
+    /**
+     * The replicator, or null when this replica has no peers.
+     */
+    Replicator getReplicator() {
+        return replicator;
+    }
+
+    private void pullAll() {
+        for (URL peer : Peers.resolve(peers.get(), false)) {
+            try {
+                applied.add(replicator.pull(new HttpReplicationPeer(peer, connectTimeoutMillis, readTimeoutMillis,
+                    sessionReader)));
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                LOGGER.log(Level.FINE, "Could not pull from " + peer, e);
+            }
+        }
+    }
+
+    private void pruneTombstones() {
+        try {
+            final int pruned = store.pruneTombstones(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(tombstoneSeconds));
+            if (pruned > 0) {
+                LOGGER.log(Level.FINE, "Forgot {0} tombstones", pruned);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not prune tombstones", e);
+        }
+    }
+
+    private void gauge(final String name, final Gauge<?> gauge) {
+        final String qualified = "io.microprofile.showcase.session.ReplicationService." + name;
+        if (metrics.getGauges().get(qualified) == null) {
+            metrics.register(qualified, gauge);
+        }
+    }
+}
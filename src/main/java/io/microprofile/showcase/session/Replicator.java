@@ -0,0 +1,92 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a store in step with other replicas by pulling from them the writes it has not seen, see
+ * {@link ReplicationLog}. Replicas pull from each other and pass on what they pulled, so every
+ * write reaches every replica as long as they are connected at all, and a replica that starts
+ * empty or comes back after a while catches up on its first pull.
+ *
+ * Nothing here knows how replicas reach each other; a {@link Peer} does, so several stores in one
+ * JVM can replicate through plain method calls.
+ */
+final class Replicator {
+
+    /**
+     * Another replica, as seen from this one.
+     */
+    interface Peer {
+
+        /**
+         * Asks the replica for what it has past the given version vector, see {@link #serve}.
+         */
+        ReplicationLog.Batch pull(Map<String, Long> vector, int max) throws IOException;
+    }
+
+    private final SessionStore store;
+
+    private final int batchSize;
+
+    Replicator(final SessionStore store, final int batchSize) {
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Answers a pull from a replica at the given vector: the next writes it lacks, or the whole
+     * state when some of them are no longer in the log, or when it has never taken this replica's
+     * state. The log only starts when replication does, so sessions from before, such as those
+     * recovered from the journal, only travel with the state.
+     */
+    ReplicationLog.Batch serve(final Map<String, Long> vector, final int max) {
+        final ReplicationLog log = store.getReplicationLog();
+        if (vector.containsKey(log.getOrigin())) {
+            final ReplicationLog.Batch batch = log.since(vector, Math.min(max, batchSize));
+            if (batch != null) {
+                return batch;
+            }
+        }
+        // The vector is read before the state, so the state covers at least what it claims
+        final Map<String, Long> current = log.vector();
+        return new ReplicationLog.Batch(current, store.replicationState(), true, false);
+    }
+
+    /**
+     * Pulls from a replica until there is nothing more.
+     *
+     * @return how many writes changed this store
+     */
+    int pull(final Peer peer) throws IOException {
+        final ReplicationLog log = store.getReplicationLog();
+        int applied = 0;
+        ReplicationLog.Batch batch;
+        do {
+            batch = peer.pull(log.vector(), batchSize);
+            if (batch.full) {
+                applied += store.replicate(batch.ops);
+                log.skipTo(batch.vector);
+            }
+            else {
+                // Another pull may have taken some of them already
+                final Map<String, Long> seen = log.vector();
+                final List<ReplicationLog.Op> next = new ArrayList<>(batch.ops.size());
+                for (ReplicationLog.Op op : batch.ops) {
+                    if (op.seq == seen.getOrDefault(op.origin, 0L) + 1) {
+                        seen.put(op.origin, op.seq);
+                        next.add(op);
+                    }
+                }
+                // Applied before they are logged, so the vector never claims a write the state lacks
+                applied += store.replicate(next);
+                for (ReplicationLog.Op op : next) {
+                    log.accept(op);
+                }
+            }
+        } while (batch.more);
+        return applied;
+    }
+}
@@ -0,0 +1,245 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+/**
+ * Bounded executors for the expensive requests, so a spike of them cannot take every request
+ * thread from the cheap ones. Point lookups stay on the request threads; the rest run on one of:
+ * <ul>
+ *     <li>{@code listing}: whole listings, searches and lookups by speaker</li>
+ *     <li>{@code bulk}: imports and change deltas</li>
+ *     <li>{@code peer}: other partitions' listings, searches and lookups, see {@link Partitioning}, which a
+ *     client's listing waits on, so they must not queue behind other clients' listings</li>
+ * </ul>
+ * Each takes at most {@code session.executor.<name>.threads} requests at a time and lets at most
+ * {@code session.executor.<name>.queue} more wait. A request is counted from when it is accepted
+ * until its work has finished. The work finds what to answer with, and the container streams the
+ * entity out afterwards. Work whose answer is written as it goes, like an import, streams it from
+ * the executor instead, see {@link Bulkhead#stream}. Requests beyond that, and requests that wait
+ * in the queue longer than {@code session.executor.timeoutSeconds}, are turned away at once with a
+ * 503 and a Retry-After of {@code session.executor.retryAfterSeconds}. Work that has started runs
+ * as long as it takes.
+ */
+@ApplicationScoped
+public class RequestExecutors {
+
+    @Inject
+    MetricRegistry metrics;
+
+    @Inject
+    @ConfigProperty(name="session.executor.listing.threads", defaultValue="4")
+    int listingThreads;
+
+    @Inject
+    @ConfigProperty(name="session.executor.listing.queue", defaultValue="32")
+    int listingQueue;
+
+    @Inject
+    @ConfigProperty(name="session.executor.bulk.threads", defaultValue="2")
+    int bulkThreads;
+
+    @Inject
+    @ConfigProperty(name="session.executor.bulk.queue", defaultValue="4")
+    int bulkQueue;
+
+    @Inject
+    @ConfigProperty(name="session.executor.peer.threads", defaultValue="4")
+    int peerThreads;
+
+    @Inject
+    @ConfigProperty(name="session.executor.peer.queue", defaultValue="32")
+    int peerQueue;
+
+    @Inject
+    @ConfigProperty(name="session.executor.timeoutSeconds", defaultValue="30")
+    int timeoutSeconds;
+
+    @Inject
+    @ConfigProperty(name="session.executor.retryAfterSeconds", defaultValue="1")
+    int retryAfterSeconds;
+
+    private Bulkhead listing;
+
+    private Bulkhead bulk;
+
+    private Bulkhead peer;
+
+    /**
+     * Work that answers a request.
+     */
+    interface Work {
+        Response run() throws Exception;
+    }
+
+    /**
+     * Work that writes the body of its answer as it goes.
+     */
+    interface Body {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * One executor, and the count of the requests it has accepted.
+     */
+    final class Bulkhead {
+
+        private final ThreadPoolExecutor executor;
+
+        private final int capacity;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final LongAdder rejected = new LongAdder();
+
+        Bulkhead(final String name, final int threads, final int queue) {
+            final AtomicInteger count = new AtomicInteger();
+            this.capacity = Math.max(1, threads) + Math.max(0, queue);
+            // Accepted requests never outnumber the capacity, so the queue never fills
+            this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(capacity), task -> {
+                    final Thread thread = new Thread(task, "session-" + name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            executor.allowCoreThreadTimeOut(true);
+            gauge(name + ".inFlight", () -> (long) inFlight.get());
+            gauge(name + ".rejected", rejected::sum);
+        }
+
+        /**
+         * Runs the work and resumes the response with its result, or resumes it with a 503 right
+         * away when this executor is full.
+         */
+        void submit(final AsyncResponse response, final Work work) {
+            execute(response, () -> response.resume(work.run()));
+        }
+
+        /**
+         * Answers with the body as it is written, in chunks, by a thread of this executor, see
+         * {@link ChunkedBody}. The request keeps its place until the whole body has been written.
+         */
+        void stream(final AsyncResponse response, final MediaType type, final Body body) {
+            execute(response, () -> {
+                final ChunkedBody chunks = new ChunkedBody();
+                // Stops the body if the container gives up on the response without sending it
+                response.register((CompletionCallback) failure -> chunks.close());
+                if (response.resume(Response.ok(chunks, type).build()))
+                    chunks.fill(body);
+            });
+        }
+
+        private void execute(final AsyncResponse response, final Task task) {
+            if (inFlight.incrementAndGet() > capacity) {
+                inFlight.decrementAndGet();
+                reject(response);
+                return;
+            }
+            final PhaseTimingFilter.Timing timing = PhaseTimingFilter.current();
+            final long queued = System.nanoTime();
+            // Taken by whichever comes first, the work starting or the wait running out
+            final AtomicBoolean claimed = new AtomicBoolean();
+            response.setTimeoutHandler(timedOut -> {
+                if (claimed.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                    reject(timedOut);
+                }
+                else
+                    // The work started as the wait ran out
+                    timedOut.setTimeout(AsyncResponse.NO_TIMEOUT, TimeUnit.SECONDS);
+            });
+            response.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+            try {
+                executor.execute(() -> {
+                    if (!claimed.compareAndSet(false, true))
+                        return;
+                    if (timing != null)
+                        timing.queued(System.nanoTime() - queued);
+                    try {
+                        response.setTimeout(AsyncResponse.NO_TIMEOUT, TimeUnit.SECONDS);
+                        // The client may have gone while it waited
+                        if (!response.isDone())
+                            task.run();
+                    } catch (Exception e) {
+                        response.resume(e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                if (claimed.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                    reject(response);
+                }
+            }
+        }
+
+        private void reject(final AsyncResponse response) {
+            rejected.increment();
+            response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds).build());
+        }
+
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+
+    @PostConstruct
+    private void start() {
+        listing = new Bulkhead("listing", listingThreads, listingQueue);
+        bulk = new Bulkhead("bulk", bulkThreads, bulkQueue);
+        peer = new Bulkhead("peer", peerThreads, peerQueue);
+    }
+
+    @PreDestroy
+    private void stop() {
+        listing.shutdown();
+        bulk.shutdown();
+        peer.shutdown();
+    }
+
+    Bulkhead listing() {
+        return listing;
+    }
+
+    Bulkhead bulk() {
+        return bulk;
+    }
+
+    Bulkhead peer() {
+        return peer;
+    }
+
+    private void gauge(final String name, final Gauge<?> gauge) {
+        final String qualified = "io.microprofile.showcase.session.RequestExecutors." + name;
+        if (metrics.getGauges().get(qualified) == null) {
+            metrics.register(qualified, gauge);
+        }
+    }
+}
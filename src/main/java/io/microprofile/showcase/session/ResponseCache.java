@@ -0,0 +1,256 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+/**
+ * Compressed encodings of responses, kept so identical content is compressed once. Entries are
+ * keyed by what they encode (the listing, or one session), the version it was at, and the content
+ * coding. A write moves the version on, so a stale entry is never served; it is replaced by the
+ * first request for the new version, or evicted.
+ *
+ * The cache holds at most {@code session.cache.maxBytes} of compressed content, evicting the least
+ * recently used entries first. Responses smaller than {@code session.cache.minBytes} uncompressed
+ * gain too little from compression to be worth it and are sent as they are.
+ */
+@ApplicationScoped
+public class ResponseCache {
+
+    enum Coding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        final String token;
+
+        Coding(final String token) {
+            this.token = token;
+        }
+    }
+
+    /**
+     * Writes the uncompressed content.
+     */
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    @Inject
+    MetricRegistry metrics;
+
+    @Inject
+    @ConfigProperty(name="session.cache.maxBytes", defaultValue="16777216")
+    long maxBytes;
+
+    @Inject
+    @ConfigProperty(name="session.cache.minBytes", defaultValue="1024")
+    int minBytes;
+
+    private final Object lock = new Object();
+
+    // Guarded by lock; keyed by what is encoded and how, so each holds only its latest version
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final ConcurrentHashMap<Key, CompletableFuture<Entry>> encoding = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Key {
+
+        final String name;
+
+        final Coding coding;
+
+        Key(final String name, final Coding coding) {
+            this.name = name;
+            this.coding = coding;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Key && ((Key) other).name.equals(name) && ((Key) other).coding == coding;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, coding);
+        }
+    }
+
+    private static final class Entry {
+
+        // Roughly what an entry costs besides its content, so small entries count against the budget
+        static final int OVERHEAD = 96;
+
+        final long version;
+
+        // Null when the content is too small to compress
+        final byte[] encoded;
+
+        Entry(final long version, final byte[] encoded) {
+            this.version = version;
+            this.encoded = encoded;
+        }
+
+        long size() {
+            return OVERHEAD + (encoded != null ? encoded.length : 0);
+        }
+    }
+
+    @PostConstruct
+    private void registerMetrics() {
+        gauge("hitRatio", () -> {
+            final long total = hits.sum() + misses.sum();
+            return total == 0 ? 0 : hits.sum() / (double) total;
+        });
+        gauge("bytes", () -> {
+            synchronized (lock) {
+                return bytes;
+            }
+        });
+    }
+
+    private void gauge(final String name, final Gauge<?> gauge) {
+        final String qualified = "io.microprofile.showcase.session.ResponseCache." + name;
+        if (metrics.getGauges().get(qualified) == null) {
+            metrics.register(qualified, gauge);
+        }
+    }
+
+    /**
+     * The content coding to answer an Accept-Encoding header with, or null for none. Gzip is
+     * preferred over deflate when both are acceptable.
+     */
+    static Coding negotiate(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Coding chosen = null;
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            final String[] parameters = part.split(";");
+            final String token = parameters[0].trim();
+            boolean acceptable = true;
+            for (int i = 1; i < parameters.length; i++) {
+                final String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        acceptable = Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        acceptable = false;
+                    }
+                }
+            }
+            if (!acceptable) {
+                continue;
+            }
+            if (token.equals("gzip") || token.equals("x-gzip")) {
+                return Coding.GZIP;
+            }
+            if (token.equals("deflate")) {
+                chosen = Coding.DEFLATE;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * The content compressed with the coding, from the cache when it holds this version.
+     *
+     * @param name what the content is, e.g. the listing or one session's id
+     * @return the compressed bytes, or null when the content is too small to be worth compressing
+     */
+    byte[] get(final String name, final long version, final Coding coding, final Content content) {
+        final Key key = new Key(name, coding);
+        synchronized (lock) {
+            final Entry cached = entries.get(key);
+            if (cached != null && cached.version == version) {
+                hits.increment();
+                return cached.encoded;
+            }
+        }
+        misses.increment();
+
+        // One request encodes a version; any others asking for it meanwhile wait for its result
+        final CompletableFuture<Entry> mine = new CompletableFuture<>();
+        final CompletableFuture<Entry> running = encoding.putIfAbsent(key, mine);
+        if (running != null) {
+            final Entry entry = running.join();
+            if (entry.version == version) {
+                return entry.encoded;
+            }
+            return encode(version, coding, content).encoded;
+        }
+        try {
+            final Entry entry = encode(version, coding, content);
+            put(key, entry);
+            mine.complete(entry);
+            return entry.encoded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            encoding.remove(key, mine);
+        }
+    }
+
+    private Entry encode(final long version, final Coding coding, final Content content) {
+        try {
+            final ByteArrayOutputStream plain = new ByteArrayOutputStream(8192);
+            content.writeTo(plain);
+            if (plain.size() < minBytes) {
+                return new Entry(version, null);
+            }
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(plain.size() / 4 + 64);
+            try (OutputStream out = coding == Coding.GZIP ? new GZIPOutputStream(compressed, 8192)
+                    : new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION), 8192)) {
+                plain.writeTo(out);
+            }
+            return new Entry(version, compressed.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void put(final Key key, final Entry entry) {
+        if (entry.size() > maxBytes) {
+            return;
+        }
+        synchronized (lock) {
+            final Entry replaced = entries.get(key);
+            if (replaced != null && replaced.version > entry.version) {
+                return;
+            }
+            entries.put(key, entry);
+            bytes += entry.size() - (replaced != null ? replaced.size() : 0);
+            final Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                final Map.Entry<Key, Entry> evicted = eldest.next();
+                bytes -= evicted.getValue().size();
+                eldest.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted index from schedule slot to the ids of the sessions in that slot, maintained
+ * incrementally by {@link SessionStore}. A slot range is answered by a range scan of the
+ * skip list, already in schedule order.
+ */
+class ScheduleIndex {
+
+    private final ConcurrentSkipListMap<Integer, Set<String>> sessionsBySchedule = new ConcurrentSkipListMap<>();
+
+    void add(final Session session) {
+        sessionsBySchedule.compute(session.getSchedule(), (slot, ids) -> {
+            final Set<String> result = ids != null ? ids : new ConcurrentSkipListSet<>();
+            result.add(session.getId());
+            return result;
+        });
+    }
+
+    void remove(final Session session) {
+        sessionsBySchedule.computeIfPresent(session.getSchedule(), (slot, ids) -> {
+            ids.remove(session.getId());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    int size() {
+        return sessionsBySchedule.size();
+    }
+
+    /**
+     * @return the ids of the sessions scheduled in {@code [from, to]}, by slot and then by id
+     */
+    List<String> sessionIds(final int from, final int to) {
+        final List<String> result = new ArrayList<>();
+        for (Set<String> ids : sessionsBySchedule.subMap(from, true, to, true).values()) {
+            result.addAll(ids);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package io.microprofile.showcase.session;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over the searchable fields of a {@link Session}. Each token maps to the ids of the
+ * sessions containing it, weighted by the field it was found in, so a query only touches the
+ * postings of its own tokens rather than every stored session.
+ *
+ * The index is maintained incrementally by {@link SessionStore}.
+ */
+class SearchIndex {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int CODE_WEIGHT = 5;
+    private static final int SPEAKER_WEIGHT = 4;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int TYPE_WEIGHT = 2;
+    private static final int ABSTRACT_WEIGHT = 1;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> postings = new ConcurrentHashMap<>();
+
+    void add(final Session session) {
+        terms(session).forEach((token, weight) -> postings.compute(token, (t, ids) -> {
+            final ConcurrentHashMap<String, Integer> result = ids != null ? ids : new ConcurrentHashMap<>();
+            result.put(session.getId(), weight);
+            return result;
+        }));
+    }
+
+    void remove(final Session session) {
+        terms(session).keySet().forEach(token -> postings.computeIfPresent(token, (t, ids) -> {
+            ids.remove(session.getId());
+            return ids.isEmpty() ? null : ids;
+        }));
+    }
+
+    int size() {
+        return postings.size();
+    }
+
+    /**
+     * Finds the sessions containing every token of the query, best match first. The score of a
+     * session is the sum of its field weights for the query tokens; ties are ordered by id.
+     *
+     * @return the ids of the matching sessions in {@code [offset, offset + limit)} of the ranking
+     */
+    List<String> search(final String query, final int offset, final int limit) {
+        final List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Map<String, Integer>> matches = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            final Map<String, Integer> ids = postings.get(token);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            matches.add(ids);
+        }
+        // Drive the intersection from the rarest token
+        matches.sort(Comparator.comparingInt(Map::size));
+
+        final Comparator<Map.Entry<String, Integer>> ranking = Comparator
+            .<Map.Entry<String, Integer>>comparingInt(Map.Entry::getValue).reversed()
+            .thenComparing(Map.Entry::getKey);
+        final int wanted = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        // Keeps the best `wanted` hits, worst of them at the head
+        final PriorityQueue<Map.Entry<String, Integer>> top = new PriorityQueue<>(Math.min(wanted, 64) + 1, ranking.reversed());
+
+        candidates:
+        for (Map.Entry<String, Integer> candidate : matches.get(0).entrySet()) {
+            int score = candidate.getValue();
+            for (int i = 1; i < matches.size(); i++) {
+                final Integer weight = matches.get(i).get(candidate.getKey());
+                if (weight == null) {
+                    continue candidates;
+                }
+                score += weight;
+            }
+            top.add(new AbstractMap.SimpleImmutableEntry<>(candidate.getKey(), score));
+            if (top.size() > wanted) {
+                top.poll();
+            }
+        }
+
+        final List<Map.Entry<String, Integer>> ranked = new ArrayList<>(top);
+        ranked.sort(ranking);
+        final List<String> result = new ArrayList<>(Math.max(0, ranked.size() - offset));
+        for (int i = offset; i < ranked.size(); i++) {
+            result.add(ranked.get(i).getKey());
+        }
+        return result;
+    }
+
+    /**
+     * The score {@link #search} ranks the session by for the query, so that the rankings of
+     * several indexes can be merged.
+     */
+    static int score(final Session session, final String query) {
+        final Map<String, Integer> terms = terms(session);
+        int score = 0;
+        for (String token : tokenize(query)) {
+            score += terms.getOrDefault(token, 0);
+        }
+        return score;
+    }
+
+    private static Map<String, Integer> terms(final Session session) {
+        final Map<String, Integer> terms = new HashMap<>();
+        addTerms(terms, session.getCode(), CODE_WEIGHT);
+        addTerms(terms, session.getTitle(), TITLE_WEIGHT);
+        addTerms(terms, session.getType(), TYPE_WEIGHT);
+        addTerms(terms, session.getAbstract(), ABSTRACT_WEIGHT);
+        for (String speaker : session.getSpeakers()) {
+            addTerms(terms, speaker, SPEAKER_WEIGHT);
+        }
+        return terms;
+    }
+
+    private static void addTerms(final Map<String, Integer> terms, final String text, final int weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Integer::sum);
+        }
+    }
+
+    static List<String> tokenize(final String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> tokens = new ArrayList<>(Arrays.asList(SEPARATORS.split(text.toLowerCase(Locale.ROOT))));
+        tokens.removeIf(String::isEmpty);
+        return tokens;
+    }
+}
@@ -16,82 +16,196 @@ package io.microprofile.showcase.session;
  * limitations under the License.
  */
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
-
-import javax.json.JsonObject;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * An immutable session. Fields are held flat rather than in the JSON object the session was read
+ * from, and repeated values such as the type and speaker ids are shared through {@link StringPool}.
+ * The store replaces sessions on every write instead of modifying them.
+ *
  * @author Ken Finnigan
  * @author Heiko Braun
  */
 public class Session {
 
-    private int schedule;
+    private static final String[] NO_SPEAKERS = new String[0];
+
+    // Requests for the JSON encoding, and how many of them had to encode
+    private static final LongAdder JSON_REQUESTS = new LongAdder();
+    private static final LongAdder JSON_ENCODES = new LongAdder();
+
+    private final String id;
+
+    private final String title;
+
+    private final String abstractText;
+
+    private final String code;
 
-    protected JsonObject underlying;
+    private final String type;
 
-    private String id;
+    private final String[] speakers;
 
-    private Collection<String> speakers = Collections.EMPTY_SET;
+    private final int schedule;
 
-    public Session(final String id, final JsonObject underlying) {
+    // Store version of the last write to this session, see SessionStore#getVersion()
+    private final long version;
+
+    // When and where the last write was made, which decides between replicas, see ReplicationLog
+    private final long lamport;
+
+    private final String origin;
+
+    // UTF-8 JSON encoding, built on the first toJson() call; sessions never change so it never goes stale
+    private volatile byte[] json;
+
+    // CBOR encoding, cached the same way
+    private volatile byte[] cbor;
+
+    public Session(final String id, final String title, final String abstractText, final String code, final String type,
+                   final Collection<String> speakers, final int schedule) {
+        this(id, title, abstractText, code, StringPool.intern(type), internAll(speakers), schedule, 0, 0, null);
+    }
+
+    private Session(final String id, final String title, final String abstractText, final String code, final String type,
+                    final String[] speakers, final int schedule, final long version, final long lamport, final String origin) {
         this.id = id;
-        this.underlying = underlying;
+        this.title = title;
+        this.abstractText = abstractText;
+        this.code = code;
+        this.type = type;
+        this.speakers = speakers;
+        this.schedule = schedule;
+        this.version = version;
+        this.lamport = lamport;
+        this.origin = origin;
     }
 
-    public Session(){}
+    private static String[] internAll(final Collection<String> speakers) {
+        if (speakers == null || speakers.isEmpty()) {
+            return NO_SPEAKERS;
+        }
+        final String[] result = new String[speakers.size()];
+        int i = 0;
+        for (String speaker : speakers) {
+            result[i++] = StringPool.intern(speaker);
+        }
+        return result;
+    }
 
     public String toString() { 
         return "Session id " + id + " " + getAbstract() + " " + getSpeakers().toString();
 
     }
 
-    @JsonIgnore
-    JsonObject getUnderlying() {
-        return underlying;
-    }
-
     public String getId() {
         return id;
     }
 
-    void setId(final String id) {
-        this.id = id;
-    }
-
     public String getAbstract() {
-        return underlying.getString("abstract");
+        return abstractText;
     }
 
     public String getCode() {
-        return underlying.getString("code");
+        return code;
     }
 
     public String getTitle() {
-        return underlying.getString("title");
+        return title;
     }
 
     public String getType() {
-        return underlying.getString("type");
+        return type;
     }
 
-    public void setSpeakers(final Collection<String> speakers) {
-        this.speakers = speakers;
+    public Collection<String> getSpeakers() {
+        return Collections.unmodifiableList(Arrays.asList(speakers));
     }
 
-    public Collection<String> getSpeakers() {
-        return speakers;
+    public int getSchedule() {
+        return schedule;
     }
 
-    public void setSchedule(final int schedule) {
-        this.schedule = schedule;
+    long getVersion() {
+        return version;
     }
 
-    public int getSchedule() {
-        return schedule;
+    long getLamport() {
+        return lamport;
     }
 
-}
+    String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Names the last write to this session the same way on every replica, unlike its version:
+     * {@code <lamport>.<origin>}, or {@code 0} for a session not written since it was loaded from
+     * the bootstrap data.
+     */
+    String getStamp() {
+        return origin != null ? lamport + "." + origin : Long.toString(lamport);
+    }
+
+    /**
+     * A copy of this session with other speakers.
+     */
+    Session withSpeakers(final Collection<String> speakers) {
+        return new Session(id, title, abstractText, code, type, internAll(speakers), schedule, version, lamport, origin);
+    }
+
+    /**
+     * The copy of this session the store keeps under the given id and version.
+     */
+    Session stored(final String id, final long version) {
+        return new Session(id, title, abstractText, code, type, speakers, schedule, version, lamport, origin);
+    }
+
+    /**
+     * The copy of this session the store keeps for a write stamped by a replica.
+     */
+    Session stored(final String id, final long version, final long lamport, final String origin) {
+        return new Session(id, title, abstractText, code, type, speakers, schedule, version, lamport, origin);
+    }
+
+    byte[] toJson() {
+        JSON_REQUESTS.increment();
+        return encodedJson();
+    }
+
+    /**
+     * The encoding {@link #toJson()} returns, without counting the call in the hit ratio, for a
+     * look at it ahead of the write that counts it.
+     */
+    byte[] encodedJson() {
+        byte[] result = json;
+        if (result == null) {
+            JSON_ENCODES.increment();
+            result = SessionWriter.encode(this);
+            json = result;
+        }
+        return result;
+    }
+
+    byte[] toCbor() {
+        byte[] result = cbor;
+        if (result == null) {
+            result = SessionCbor.encode(this);
+            cbor = result;
+        }
+        return result;
+    }
 
+    /**
+     * The share of {@link #toJson()} calls answered from the cached encoding, since startup.
+     */
+    static double jsonCacheHitRatio() {
+        final long requests = JSON_REQUESTS.sum();
+        return requests == 0 ? 0 : (requests - JSON_ENCODES.sum()) / (double) requests;
+    }
+
+}
@@ -0,0 +1,325 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sessions in CBOR (RFC 7049), for service-to-service calls. A session is a map with the same
+ * text keys and values as its JSON form, so the two carry exactly the same data:
+ * <pre>
+ * {"id": "...", "abstract": "...", "title": "...", "code": "...", "type": "...", "speakers": [...], "schedule": 12}
+ * </pre>
+ * Only definite lengths are written or read. Unknown keys are skipped, like in JSON.
+ */
+final class SessionCbor {
+
+    static final String MEDIA_TYPE = "application/cbor";
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int BYTES = 2;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE = 7;
+
+    private static final int NULL = 0xf6;
+
+    // Deepest nesting skipped in an unknown value
+    private static final int MAX_DEPTH = 32;
+
+    private SessionCbor() {
+    }
+
+    /**
+     * Encodes a session. Sessions cache the result, see {@link Session#toCbor()}.
+     */
+    static byte[] encode(final Session session) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        head(out, MAP, 7);
+        entry(out, "id", session.getId());
+        entry(out, "abstract", session.getAbstract());
+        entry(out, "title", session.getTitle());
+        entry(out, "code", session.getCode());
+        entry(out, "type", session.getType());
+        text(out, "speakers");
+        final Collection<String> speakers = session.getSpeakers();
+        head(out, ARRAY, speakers.size());
+        for (String speaker : speakers) {
+            text(out, speaker);
+        }
+        text(out, "schedule");
+        final int schedule = session.getSchedule();
+        if (schedule >= 0) {
+            head(out, UNSIGNED, schedule);
+        }
+        else {
+            head(out, NEGATIVE, -1L - schedule);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The head of an array of the given length, to precede that many encoded sessions.
+     */
+    static byte[] arrayHead(final int length) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(9);
+        head(out, ARRAY, length);
+        return out.toByteArray();
+    }
+
+    private static void entry(final ByteArrayOutputStream out, final String key, final String value) {
+        text(out, key);
+        if (value != null) {
+            text(out, value);
+        }
+        else {
+            out.write(NULL);
+        }
+    }
+
+    private static void text(final ByteArrayOutputStream out, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        head(out, TEXT, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void head(final ByteArrayOutputStream out, final int major, final long value) {
+        final int type = major << 5;
+        if (value < 24) {
+            out.write(type | (int) value);
+        }
+        else if (value < 0x100) {
+            out.write(type | 24);
+            out.write((int) value);
+        }
+        else if (value < 0x10000) {
+            out.write(type | 25);
+            out.write((int) (value >>> 8));
+            out.write((int) value);
+        }
+        else if (value < 0x100000000L) {
+            out.write(type | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+        }
+        else {
+            out.write(type | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+        }
+    }
+
+    /**
+     * Decodes one session that must make up the whole input.
+     *
+     * @throws IllegalArgumentException when the input is not a valid session, with a message fit
+     * for the client
+     */
+    static Session decode(final ByteBuffer in, final int maxStringLength, final int maxSpeakers) {
+        try {
+            final int initial = in.get() & 0xff;
+            if (initial >>> 5 != MAP) {
+                throw new IllegalArgumentException("A session must be a CBOR map");
+            }
+            String id = null;
+            String title = null;
+            String abstractText = null;
+            String code = null;
+            String type = null;
+            List<String> speakers = Collections.emptyList();
+            Integer schedule = null;
+
+            for (long entries = length(in, initial); entries > 0; entries--) {
+                final String key = text(in, Integer.MAX_VALUE, "key");
+                switch (key) {
+                    case "id":
+                        id = text(in, maxStringLength, key);
+                        break;
+                    case "title":
+                        title = nullableText(in, maxStringLength, key);
+                        break;
+                    case "abstract":
+                        abstractText = nullableText(in, maxStringLength, key);
+                        break;
+                    case "code":
+                        code = nullableText(in, maxStringLength, key);
+                        break;
+                    case "type":
+                        type = nullableText(in, maxStringLength, key);
+                        break;
+                    case "speakers":
+                        speakers = speakers(in, maxStringLength, maxSpeakers);
+                        break;
+                    case "schedule":
+                        schedule = integer(in, key);
+                        break;
+                    default:
+                        skip(in, 0);
+                }
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected data after the session");
+            }
+            if (id == null) {
+                throw new IllegalArgumentException("Session id is required");
+            }
+            if (schedule == null) {
+                throw new IllegalArgumentException("Session schedule is required");
+            }
+            return new Session(id, title, abstractText, code, type, speakers, schedule);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Unexpected end of session");
+        }
+    }
+
+    private static String nullableText(final ByteBuffer in, final int maxLength, final String key) {
+        if (!in.hasRemaining()) {
+            throw new BufferUnderflowException();
+        }
+        if ((in.get(in.position()) & 0xff) == NULL) {
+            in.get();
+            return null;
+        }
+        return text(in, maxLength, key);
+    }
+
+    private static String text(final ByteBuffer in, final int maxLength, final String key) {
+        final int initial = in.get() & 0xff;
+        if (initial >>> 5 != TEXT) {
+            throw new IllegalArgumentException("Session " + key + " must be a text string");
+        }
+        final long length = length(in, initial);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[(int) length];
+        in.get(bytes);
+        final String value = new String(bytes, StandardCharsets.UTF_8);
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException("Session " + key + " is longer than " + maxLength + " characters");
+        }
+        return value;
+    }
+
+    private static List<String> speakers(final ByteBuffer in, final int maxStringLength, final int maxSpeakers) {
+        final int initial = in.get() & 0xff;
+        if (initial == NULL) {
+            return Collections.emptyList();
+        }
+        if (initial >>> 5 != ARRAY) {
+            throw new IllegalArgumentException("Session speakers must be an array of text strings");
+        }
+        final long count = length(in, initial);
+        if (count > maxSpeakers) {
+            throw new IllegalArgumentException("A session may have at most " + maxSpeakers + " speakers");
+        }
+        final List<String> speakers = new ArrayList<>((int) count);
+        for (long i = 0; i < count; i++) {
+            speakers.add(text(in, maxStringLength, "speaker"));
+        }
+        return speakers;
+    }
+
+    private static int integer(final ByteBuffer in, final String key) {
+        final int initial = in.get() & 0xff;
+        final int major = initial >>> 5;
+        if (major != UNSIGNED && major != NEGATIVE) {
+            throw new IllegalArgumentException("Session " + key + " must be an integer");
+        }
+        final long magnitude = length(in, initial);
+        final long value = major == UNSIGNED ? magnitude : -1 - magnitude;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Session " + key + " is out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * The argument of a head: a length, count or integer magnitude.
+     */
+    private static long length(final ByteBuffer in, final int initial) {
+        final int info = initial & 0x1f;
+        final long value;
+        if (info < 24) {
+            value = info;
+        }
+        else if (info == 24) {
+            value = in.get() & 0xffL;
+        }
+        else if (info == 25) {
+            value = in.getShort() & 0xffffL;
+        }
+        else if (info == 26) {
+            value = in.getInt() & 0xffffffffL;
+        }
+        else if (info == 27) {
+            value = in.getLong();
+        }
+        else if (info == 31) {
+            throw new IllegalArgumentException("Indefinite-length items are not supported");
+        }
+        else {
+            throw new IllegalArgumentException("Malformed CBOR");
+        }
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("CBOR length or value is too large");
+        }
+        return value;
+    }
+
+    private static void skip(final ByteBuffer in, final int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("CBOR is nested too deeply");
+        }
+        final int initial = in.get() & 0xff;
+        final int major = initial >>> 5;
+        if (major == SIMPLE) {
+            final int info = initial & 0x1f;
+            final int size = info < 24 ? 0 : info == 24 ? 1 : info == 25 ? 2 : info == 26 ? 4 : info == 27 ? 8 : -1;
+            if (size < 0) {
+                throw new IllegalArgumentException("Malformed CBOR");
+            }
+            if (size > in.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            in.position(in.position() + size);
+            return;
+        }
+        final long length = length(in, initial);
+        switch (major) {
+            case BYTES:
+            case TEXT:
+                if (length > in.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                in.position(in.position() + (int) length);
+                break;
+            case ARRAY:
+                for (long i = 0; i < length; i++) {
+                    skip(in, depth + 1);
+                }
+                break;
+            case MAP:
+                for (long i = 0; i < 2 * length; i++) {
+                    skip(in, depth + 1);
+                }
+                break;
+            case TAG:
+                skip(in, depth + 1);
+                break;
+            default:
+                // Integers are all head
+                break;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The binary form of sessions used on disk: journal records and snapshot files.
+ *
+ * A session is written as its version, then id, title, abstract, code and type as length-prefixed
+ * UTF-8 (a length of -1 for null), then the speaker count and speakers, then the schedule, then the
+ * Lamport stamp and origin of its last write. Sessions written before stamps were kept end at the
+ * schedule, and read back unstamped.
+ *
+ * A snapshot file is a header of magic number, format, store version and session count, followed
+ * by one length-prefixed session per entry and a CRC-32 of everything before it.
+ */
+final class SessionCodec {
+
+    static final int SNAPSHOT_MAGIC = 0x53534E50;
+
+    static final int SNAPSHOT_FORMAT = 1;
+
+    private SessionCodec() {
+    }
+
+    static byte[] encode(final Session session) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try {
+            write(new DataOutputStream(bytes), session);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void write(final DataOutputStream out, final Session session) throws IOException {
+        out.writeLong(session.getVersion());
+        writeString(out, session.getId());
+        writeString(out, session.getTitle());
+        writeString(out, session.getAbstract());
+        writeString(out, session.getCode());
+        writeString(out, session.getType());
+        final Collection<String> speakers = session.getSpeakers();
+        out.writeInt(speakers.size());
+        for (String speaker : speakers) {
+            writeString(out, speaker);
+        }
+        out.writeInt(session.getSchedule());
+        out.writeLong(session.getLamport());
+        writeString(out, session.getOrigin());
+    }
+
+    /**
+     * Reads a session from a buffer that ends where the session does, as journal records and
+     * snapshot entries do.
+     */
+    static Session read(final ByteBuffer in) {
+        final long version = in.getLong();
+        final String id = readString(in);
+        final String title = readString(in);
+        final String abstractText = readString(in);
+        final String code = readString(in);
+        final String type = readString(in);
+        final int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 4) {
+            throw new IllegalArgumentException("Corrupt speaker count " + count);
+        }
+        final List<String> speakers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            speakers.add(readString(in));
+        }
+        final int schedule = in.getInt();
+        final Session session = new Session(id, title, abstractText, code, type, speakers, schedule);
+        if (!in.hasRemaining()) {
+            return session.stored(id, version);
+        }
+        final long lamport = in.getLong();
+        return session.stored(id, version, lamport, readString(in));
+    }
+
+    static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a snapshot file. The stream is not closed.
+     */
+    static void writeSnapshot(final OutputStream target, final long version, final Collection<Session> sessions) throws IOException {
+        final CRC32 crc = new CRC32();
+        final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(target, crc));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_FORMAT);
+        out.writeLong(version);
+        out.writeInt(sessions.size());
+        for (Session session : sessions) {
+            final byte[] bytes = encode(session);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+        new DataOutputStream(target).writeLong(crc.getValue());
+        target.flush();
+    }
+
+    /**
+     * Reads a snapshot file written by {@link #writeSnapshot}.
+     *
+     * @throws IllegalArgumentException when the data is not an intact snapshot
+     */
+    static SessionSnapshot readSnapshot(final ByteBuffer in) {
+        if (in.remaining() < 28) {
+            throw new IllegalArgumentException("Snapshot is truncated");
+        }
+        final ByteBuffer body = in.duplicate();
+        body.limit(in.limit() - 8);
+        final CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if (crc.getValue() != in.getLong(in.limit() - 8)) {
+            throw new IllegalArgumentException("Snapshot checksum does not match");
+        }
+        if (body.getInt() != SNAPSHOT_MAGIC || body.getInt() != SNAPSHOT_FORMAT) {
+            throw new IllegalArgumentException("Not a session snapshot");
+        }
+        final long version = body.getLong();
+        final int count = body.getInt();
+        final List<Session> sessions = new ArrayList<>(Math.max(0, Math.min(count, body.remaining() / 4)));
+        for (int i = 0; i < count; i++) {
+            final int length = body.getInt();
+            final ByteBuffer entry = body.slice();
+            entry.limit(length);
+            sessions.add(read(entry));
+            body.position(body.position() + length);
+        }
+        return new SessionSnapshot(version, sessions);
+    }
+}
@@ -0,0 +1,64 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Streams a collection of sessions as a JSON array, one session at a time, straight from the
+ * per-session encodings cached by {@link Session#toJson()}. Nothing but the current session is
+ * held in memory, however large the listing.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class SessionCollectionWriter implements MessageBodyWriter<Collection<Session>> {
+
+    public SessionCollectionWriter() {}
+
+    @Override
+    public void writeTo(Collection<Session> sessions, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType,
+                    MultivaluedMap<String, Object> map, OutputStream os) throws IOException, WebApplicationException
+    {
+        write(sessions, os);
+    }
+
+    static void write(Collection<Session> sessions, OutputStream os) throws IOException {
+        os.write('[');
+        boolean first = true;
+        for (Session session : sessions) {
+            if (!first) {
+                os.write(',');
+            }
+            os.write(session.toJson());
+            first = false;
+        }
+        os.write(']');
+    }
+
+    @Override
+    public long getSize(Collection<Session> sessions, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public boolean isWriteable (Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
+        return Collection.class.isAssignableFrom(clazz) && isSessionCollection(type);
+    }
+
+    static boolean isSessionCollection(Type type) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            return arguments.length == 1 && arguments[0].equals(Session.class);
+        }
+        return false;
+    }
+}
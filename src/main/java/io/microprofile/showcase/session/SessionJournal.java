@@ -0,0 +1,80 @@
+package io.microprofile.showcase.session;
+
+import java.io.Closeable;
+import java.util.function.Supplier;
+
+/**
+ * Where {@link SessionStore} persists its writes. The store recovers from the journal at startup,
+ * appends every write once it is stored and before it is published, and calls {@link #sync()} before
+ * the write returns to the client.
+ */
+interface SessionJournal extends Closeable {
+
+    /**
+     * The journal of a store that lives in memory only.
+     */
+    SessionJournal NONE = new SessionJournal() {
+        @Override
+        public SessionSnapshot recover() {
+            return SessionSnapshot.EMPTY;
+        }
+
+        @Override
+        public void start(final Supplier<SessionSnapshot> snapshots) {
+        }
+
+        @Override
+        public void stored(final Session session) {
+        }
+
+        @Override
+        public void removed(final String sessionId, final long version) {
+        }
+
+        @Override
+        public void sync() {
+        }
+
+        @Override
+        public void compact() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Loads the persisted state. The result holds the latest version of every live session, in no
+     * particular order, and the highest store version found.
+     */
+    SessionSnapshot recover();
+
+    /**
+     * Starts accepting writes. Compaction takes its snapshots from the given supplier, which must
+     * return a snapshot that includes every write appended before the call.
+     */
+    void start(Supplier<SessionSnapshot> snapshots);
+
+    void stored(Session session);
+
+    void removed(String sessionId, long version);
+
+    /**
+     * Blocks until everything the calling thread appended since its last sync is as durable as the
+     * journal's fsync policy makes it.
+     *
+     * @throws java.io.UncheckedIOException when any of it could not be written, or the journal is
+     * closed
+     */
+    void sync();
+
+    /**
+     * Replaces the journal's history with a snapshot of the store, now, unless a compaction is
+     * already under way; any write that one does not cover stays in the log.
+     */
+    void compact();
+
+    @Override
+    void close();
+}
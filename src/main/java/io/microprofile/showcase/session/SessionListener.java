@@ -0,0 +1,17 @@
+package io.microprofile.showcase.session;
+
+/**
+ * Told about every change to the stored sessions, see {@link SessionStore#addListener}.
+ *
+ * Listeners are called while the store holds the lock of the changed id's map bin, so changes to
+ * one id arrive in order, but listeners must be quick and must not call back into the store.
+ * Writes to one id that race may arrive as a single change from the first state to the last.
+ */
+interface SessionListener {
+
+    /**
+     * @param previous the session before the change, or null when it was created
+     * @param current the session after the change, or null when it was removed
+     */
+    void changed(Session previous, Session current);
+}
@@ -1,28 +1,77 @@
 package io.microprofile.showcase.session;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.json.Json;
+import javax.json.JsonException;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
 import javax.json.JsonString;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
 import javax.ws.rs.core.MultivaluedMap;
 
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/**
+ * Reads a session in a single pass over the parser events, without building a JSON object tree.
+ * Payloads are checked against configurable limits as they are read, and anything that is not a
+ * valid session is rejected with a 400 (or a 413 when it is too large):
+ * <ul>
+ *     <li>{@code session.reader.maxBytes}: the largest accepted payload, default 64 KiB</li>
+ *     <li>{@code session.reader.maxStringLength}: the longest accepted text field, default 16 Ki characters</li>
+ *     <li>{@code session.reader.maxSpeakers}: the most speakers a session may have, default 64</li>
+ * </ul>
+ */
 @Provider
 @Consumes(MediaType.APPLICATION_JSON)
 public class SessionReader implements MessageBodyReader<Session> {
 
+    private static final JsonParserFactory PARSERS = Json.createParserFactory(Collections.emptyMap());
+
+    private final int maxBytes;
+    private final int maxStringLength;
+    private final int maxSpeakers;
+
+    public SessionReader() {
+        this(ConfigProvider.getConfig());
+    }
+
+    private SessionReader(Config config) {
+        this(config.getOptionalValue("session.reader.maxBytes", Integer.class).orElse(64 * 1024),
+             config.getOptionalValue("session.reader.maxStringLength", Integer.class).orElse(16 * 1024),
+             config.getOptionalValue("session.reader.maxSpeakers", Integer.class).orElse(64));
+    }
+
+    SessionReader(int maxBytes, int maxStringLength, int maxSpeakers) {
+        this.maxBytes = maxBytes;
+        this.maxStringLength = maxStringLength;
+        this.maxSpeakers = maxSpeakers;
+    }
+
     @Override
     public boolean isReadable(Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
        return clazz.equals(Session.class);
@@ -31,27 +80,265 @@ public class SessionReader implements MessageBodyReader<Session> {
     @Override
     public Session readFrom(Class<Session> clazz, Type type, Annotation[] annotations, MediaType mediaType,
                              MultivaluedMap<String, String> map, InputStream is) throws IOException, WebApplicationException {
-        JsonReader reader = Json.createReader(is);
-        JsonObject jsonObject = reader.readObject();
-        Session result = buildSession (jsonObject);
-        reader.close();
-        return result;
+        String length = map.getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (length != null && length.trim().matches("\\d+") && Long.parseLong(length.trim()) > maxBytes) {
+            throw tooLarge();
+        }
+        try (JsonParser parser = PARSERS.createParser(new LimitedInputStream(is, maxBytes))) {
+            return parse(parser);
+        } catch (JsonParsingException e) {
+            throw badRequest("Malformed session: " + e.getMessage());
+        } catch (JsonException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof PayloadTooLargeException) {
+                    throw tooLarge();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a session from one JSON document, as found on a line of an NDJSON import. Anything
+     * wrong with the line, down to broken JSON, fails with a 400 for that line only.
+     */
+    Session read(String json) {
+        // A character is at least one byte and at most three, so only count when it could matter
+        if (json.length() > maxBytes
+            || (json.length() * 3L > maxBytes && json.getBytes(StandardCharsets.UTF_8).length > maxBytes)) {
+            throw tooLarge();
+        }
+        try (JsonParser parser = PARSERS.createParser(new StringReader(json))) {
+            return parse(parser);
+        } catch (JsonException e) {
+            throw badRequest("Malformed session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a session another instance sent, already parsed, with the same checks as a client's.
+     *
+     * @throws JsonException when it is not a valid session
+     */
+    Session read(JsonObject json) {
+        try (JsonParser parser = PARSERS.createParser(json)) {
+            return parse(parser);
+        } catch (WebApplicationException e) {
+            throw new JsonException(e.getMessage(), e);
+        }
+    }
+
+    private Session parse(JsonParser parser) {
+        if (next(parser) != Event.START_OBJECT) {
+            throw badRequest("A session must be a JSON object");
+        }
+        String id = null;
+        String title = null;
+        String abstractText = null;
+        String code = null;
+        String type = null;
+        List<String> speakers = Collections.emptyList();
+        Integer schedule = null;
+
+        Event event;
+        while ((event = next(parser)) == Event.KEY_NAME) {
+            String key = parser.getString();
+            switch (key) {
+                case "id":
+                    id = string(parser, key, false);
+                    break;
+                case "title":
+                    title = string(parser, key, true);
+                    break;
+                case "abstract":
+                    abstractText = string(parser, key, true);
+                    break;
+                case "code":
+                    code = string(parser, key, true);
+                    break;
+                case "type":
+                    type = string(parser, key, true);
+                    break;
+                case "speakers":
+                    speakers = speakers(parser);
+                    break;
+                case "schedule":
+                    schedule = integer(parser, key);
+                    break;
+                default:
+                    skipValue(parser);
+            }
+        }
+        if (event != Event.END_OBJECT) {
+            throw badRequest("Unexpected " + event + " in session");
+        }
+        if (id == null) {
+            throw badRequest("Session id is required");
+        }
+        if (schedule == null) {
+            throw badRequest("Session schedule is required");
+        }
+        return new Session(id, title, abstractText, code, type, speakers, schedule);
+    }
+
+    private String string(JsonParser parser, String key, boolean nullable) {
+        Event event = next(parser);
+        if (event == Event.VALUE_NULL && nullable) {
+            return null;
+        }
+        if (event != Event.VALUE_STRING) {
+            throw badRequest("Session " + key + " must be a string");
+        }
+        String value = parser.getString();
+        if (value.length() > maxStringLength) {
+            throw badRequest("Session " + key + " is longer than " + maxStringLength + " characters");
+        }
+        return value;
+    }
+
+    private int integer(JsonParser parser, String key) {
+        if (next(parser) != Event.VALUE_NUMBER || !parser.isIntegralNumber()) {
+            throw badRequest("Session " + key + " must be an integer");
+        }
+        long value = parser.getLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw badRequest("Session " + key + " is out of range");
+        }
+        return (int) value;
     }
 
-    public static Session buildSession (JsonObject jsonObject) { 
-        System.out.println ("Into SessionReader.buildSession with " + jsonObject.toString());
+    private List<String> speakers(JsonParser parser) {
+        Event event = next(parser);
+        if (event == Event.VALUE_NULL) {
+            return Collections.emptyList();
+        }
+        if (event != Event.START_ARRAY) {
+            throw badRequest("Session speakers must be an array of strings");
+        }
+        List<String> speakers = new ArrayList<>();
+        while ((event = next(parser)) == Event.VALUE_STRING) {
+            if (speakers.size() == maxSpeakers) {
+                throw badRequest("A session may have at most " + maxSpeakers + " speakers");
+            }
+            String speaker = parser.getString();
+            if (speaker.length() > maxStringLength) {
+                throw badRequest("Speaker id is longer than " + maxStringLength + " characters");
+            }
+            speakers.add(speaker);
+        }
+        if (event != Event.END_ARRAY) {
+            throw badRequest("Session speakers must be an array of strings");
+        }
+        return speakers;
+    }
+
+    private static void skipValue(JsonParser parser) {
+        int depth = 0;
+        do {
+            switch (next(parser)) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private static Event next(JsonParser parser) {
+        if (!parser.hasNext()) {
+            throw badRequest("Unexpected end of session");
+        }
+        return parser.next();
+    }
+
+    int getMaxBytes() {
+        return maxBytes;
+    }
+
+    int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    int getMaxSpeakers() {
+        return maxSpeakers;
+    }
+
+    static BadRequestException badRequest(String message) {
+        return new BadRequestException(message,
+            Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN).entity(message).build());
+    }
+
+    WebApplicationException tooLarge() {
+        return new WebApplicationException("Session payload is larger than " + maxBytes + " bytes",
+            Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    public static Session buildSession (JsonObject jsonObject) {
+        Logger logger = Logger.getLogger(SessionReader.class.getName());
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Into SessionReader.buildSession with " + jsonObject.toString());
+        }
         JsonString idj = jsonObject.getJsonString("id");
         String id = idj.getString();
         Collection<String> speakers = new ArrayList<>();
-        for (JsonString s : jsonObject.getJsonArray("speakers").getValuesAs(JsonString.class)) { 
+        for (JsonString s : jsonObject.getJsonArray("speakers").getValuesAs(JsonString.class)) {
           speakers.add(s.getString());
         }
         JsonNumber schedule = jsonObject.getJsonNumber("schedule");
-        Session result = new Session (id, jsonObject);
-        result.setSpeakers (speakers);
-        result.setSchedule (schedule.intValue());
+        Session result = new Session (id, jsonObject.getString("title", null), jsonObject.getString("abstract", null),
+            jsonObject.getString("code", null), jsonObject.getString("type", null), speakers, schedule.intValue());
 
-        System.out.println ("SessionReader.buildSession built " + result.toString());
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("SessionReader.buildSession built " + result.toString());
+        }
         return result;
     }
-}
\ No newline at end of file
+
+    private static class PayloadTooLargeException extends IOException {
+    }
+
+    /**
+     * Fails the read as soon as more than the allowed number of bytes have been consumed, so an
+     * oversized body is never buffered in full.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                consumed(count);
+            }
+            return count;
+        }
+
+        private void consumed(int count) throws IOException {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new PayloadTooLargeException();
+            }
+        }
+    }
+}
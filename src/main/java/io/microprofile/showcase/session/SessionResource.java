@@ -17,24 +17,46 @@ package io.microprofile.showcase.session;
 
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Objects;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
 
 import org.eclipse.microprofile.metrics.annotation.Counted;
 import org.eclipse.microprofile.metrics.annotation.Metered;
@@ -52,20 +74,203 @@ import io.microprofile.showcase.session.health.HealthCheckBean;
 @Metered(name="io.microprofile.showcase.session.SessionResource.Type.Metered",tags="app=session")
 public class SessionResource {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final MediaType CBOR_TYPE = MediaType.valueOf(SessionCbor.MEDIA_TYPE);
+
+    private static final MediaType NDJSON_TYPE = MediaType.valueOf(NdjsonImport.MEDIA_TYPE);
+
+    // Marks the tags of CBOR representations, see tag
+    private static final String CBOR_TAG = "-cbor";
+
+    private static final Comparator<Session> BY_ID = Comparator.comparing(Session::getId);
+
+    // The order of the schedule index
+    private static final Comparator<Session> BY_SCHEDULE = Comparator.comparingInt(Session::getSchedule).thenComparing(BY_ID);
+
     @Inject
     private SessionStore sessionStore;
 	@Inject HealthCheckBean healthCheckBean;
+    @Inject
+    private ChangeFeed changeFeed;
+    @Inject
+    private ResponseCache responseCache;
+    @Inject
+    private RequestExecutors requestExecutors;
+    @Inject
+    private Partitioning partitioning;
 
+    private final SessionReader sessionReader = new SessionReader();
+
+    /**
+     * The listing, whole or filtered, or one page of it. Whole listings run on the listing executor,
+     * see {@link RequestExecutors}; pages are bounded and answered right away. When partitioned,
+     * every partition's part is gathered, see {@link #gatherSessions}.
+     */
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
     @Counted(monotonic = true,tags="app=session")
-    public Collection<Session> allSessions() throws Exception {
-        return sessionStore.getSessions();
+    public void allSessions(@QueryParam("speaker") final String speakerId,
+                            @QueryParam("fromSchedule") final Integer fromSchedule,
+                            @QueryParam("toSchedule") final Integer toSchedule,
+                            @QueryParam("limit") final Integer limit,
+                            @QueryParam("cursor") final String cursor,
+                            @HeaderParam(Partitioning.LOCAL) final String localOnly,
+                            @HeaderParam(Partitioning.PEER) final String peer,
+                            @Context final HttpHeaders headers,
+                            @Context final UriInfo uriInfo,
+                            @Suspended final AsyncResponse response) throws Exception {
+        final int from = fromSchedule != null ? fromSchedule : Integer.MIN_VALUE;
+        final int to = toSchedule != null ? toSchedule : Integer.MAX_VALUE;
+        if (from > to) {
+            response.resume(Response.status(400).build());
+            return;
+        }
+        // Another partition asking for this one's part
+        final boolean fromPeer = localOnly != null && partitioning.isPeer(peer);
+        // Read what the work needs from the request here, on the request thread
+        final boolean binary = prefersCbor(headers);
+        if (partitioning.isEnabled() && !fromPeer) {
+            gatherSessions(speakerId, fromSchedule, toSchedule, limit, cursor, binary, uriInfo, response);
+            return;
+        }
+        if (limit != null || cursor != null) {
+            response.resume(pageOfSessions(speakerId == null && fromSchedule == null && toSchedule == null, limit, cursor,
+                binary, uriInfo));
+            return;
+        }
+
+        // The unfiltered listing is one snapshot, tagged with exactly its version. Filtered listings
+        // come from the live indexes, which already hold every write in the snapshot, so its version
+        // read first is never newer than the body
+        final SessionSnapshot snapshot = sessionStore.getSnapshot();
+        final boolean filtered = speakerId != null || fromSchedule != null || toSchedule != null;
+        final String token = sessionStore.token(snapshot.getVersion());
+        final Response.ResponseBuilder notModified = notModified(headers, token, binary);
+        if (notModified != null) {
+            response.resume(notModified.build());
+            return;
+        }
+
+        final String acceptEncoding = headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        (fromPeer ? requestExecutors.peer() : requestExecutors.listing()).submit(response, () -> {
+            if (!filtered)
+                return compressed("sessions", snapshot.getVersion(), token, binary, acceptEncoding,
+                    out -> SessionCollectionWriter.write(snapshot.getSessions(), out),
+                    out -> CborSessionWriter.write(snapshot.getSessions(), out),
+                    new GenericEntity<Collection<Session>>(snapshot.getSessions()) {}).build();
+            final Collection<Session> sessions = findSessions(speakerId, fromSchedule, toSchedule);
+            return negotiated(new GenericEntity<Collection<Session>>(sessions) {}, binary)
+                .tag(tag(token, binary, null)).build();
+        });
+    }
+
+    private Collection<Session> findSessions(final String speakerId, final Integer fromSchedule, final Integer toSchedule) {
+        if (fromSchedule != null || toSchedule != null) {
+            final List<Session> scheduled = sessionStore.findBySchedule(fromSchedule != null ? fromSchedule : Integer.MIN_VALUE,
+                toSchedule != null ? toSchedule : Integer.MAX_VALUE);
+            if (speakerId != null)
+                scheduled.removeIf(s -> !s.getSpeakers().contains(speakerId));
+            return scheduled;
+        }
+        else if (speakerId != null)
+            return sessionStore.findBySpeaker(speakerId);
+        else
+            return sessionStore.getSnapshot().getSessions();
+    }
+
+    /**
+     * The listing or a page of it across every partition: this instance's part and the others',
+     * merged in the order one store would give. Each partition answers with its own page after the
+     * cursor, so the merged page is exact. Gathered listings are not tagged, as the partitions'
+     * versions do not add up to one.
+     */
+    private void gatherSessions(final String speakerId, final Integer fromSchedule, final Integer toSchedule,
+                                final Integer limit, final String cursor, final boolean binary,
+                                final UriInfo uriInfo, final AsyncResponse response) {
+        final boolean scheduled = fromSchedule != null || toSchedule != null;
+        final String after;
+        if (limit != null || cursor != null) {
+            if (speakerId != null || scheduled || limit == null || limit < 1 || limit > MAX_PAGE_SIZE) {
+                response.resume(Response.status(400).build());
+                return;
+            }
+            try {
+                after = decodeCursor(cursor);
+            } catch (IllegalArgumentException e) {
+                response.resume(Response.status(400).build());
+                return;
+            }
+        }
+        else
+            after = null;
+
+        // Read what the work needs from the request here, on the request thread
+        final URI relative = uriInfo.getBaseUri().relativize(uriInfo.getRequestUri());
+        final UriBuilder requestUri = uriInfo.getRequestUriBuilder();
+        requestExecutors.listing().submit(response, () -> {
+            final List<Session> sessions = new ArrayList<>(limit != null
+                ? sessionStore.getSnapshot().after(after, limit + 1) : findSessions(speakerId, fromSchedule, toSchedule));
+            boolean more = false;
+            for (List<Session> part : partitioning.gather(relative)) {
+                // A full page from a partition may have more after it
+                more |= limit != null && part.size() >= limit;
+                sessions.addAll(part);
+            }
+            sessions.sort(scheduled ? BY_SCHEDULE : BY_ID);
+            if (limit == null)
+                return negotiated(new GenericEntity<List<Session>>(sessions) {}, binary).build();
+            return page(sessions.subList(0, Math.min(limit, sessions.size())), more || sessions.size() > limit, binary,
+                requestUri);
+        });
+    }
+
+    /**
+     * One page of the listing in id order. The cursor is the last id of the previous page, so it
+     * stays valid however many sessions are saved or removed in between.
+     */
+    private Response pageOfSessions(final boolean unfiltered, final Integer limit, final String cursor, final boolean binary,
+                                    final UriInfo uriInfo) {
+        if (!unfiltered || limit == null || limit < 1 || limit > MAX_PAGE_SIZE)
+            return Response.status(400).build();
+
+        final String after;
+        try {
+            after = decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).build();
+        }
+
+        final SessionSnapshot snapshot = sessionStore.getSnapshot();
+        final List<Session> fetched = snapshot.after(after, limit + 1);
+        return page(fetched.subList(0, Math.min(limit, fetched.size())), fetched.size() > limit, binary,
+            uriInfo.getRequestUriBuilder());
+    }
+
+    private static String decodeCursor(final String cursor) {
+        return cursor != null ? new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * The page, linking to the next one when there is more after it.
+     */
+    private static Response page(final List<Session> page, final boolean more, final boolean binary,
+                                 final UriBuilder requestUri) {
+        final Response.ResponseBuilder response;
+        if (more) {
+            final String next = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(page.get(page.size() - 1).getId().getBytes(StandardCharsets.UTF_8));
+            response = negotiated(new GenericEntity<List<Session>>(page) {}, binary)
+                .link(requestUri.replaceQueryParam("cursor", next).build(), "next");
+        }
+        else
+            response = negotiated(new GenericEntity<List<Session>>(page) {}, binary);
+        return response.build();
     }
 
     @POST
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
     @Counted(monotonic = true,tags="app=session")
     public Session createSession(final Session session) throws Exception {
         System.out.println ("createSession called for " + session.toString());
@@ -74,6 +279,92 @@ public class SessionResource {
         return result;
     }
 
+    @POST
+    @Path("/batch")
+    @Consumes(NdjsonImport.MEDIA_TYPE)
+    @Produces(NdjsonImport.MEDIA_TYPE)
+    @Counted(monotonic = true,tags="app=session")
+    public void createSessions(final InputStream sessions, @Suspended final AsyncResponse response) throws Exception {
+        requestExecutors.bulk().stream(response, NDJSON_TYPE, new NdjsonImport(sessionStore, sessionReader, sessions)::write);
+    }
+
+    /**
+     * The change feed as server-sent events, resuming after the event in the Last-Event-ID header.
+     * See {@link ChangeFeed}.
+     */
+    @GET
+    @Path("/events")
+    @Produces(ChangeFeed.MEDIA_TYPE)
+    @Counted(monotonic = true,tags="app=session")
+    public Response events(@HeaderParam("Last-Event-ID") final String lastEventId) throws Exception {
+        final StreamingOutput events = changeFeed.subscribe(lastEventId);
+        if (events == null)
+            return Response.status(503).header(HttpHeaders.RETRY_AFTER, 10).build();
+        return Response.ok(events).header(HttpHeaders.CACHE_CONTROL, "no-cache").build();
+    }
+
+    /**
+     * The sessions created or changed after the store version {@code since} names, and the ids
+     * removed since then, as of the version in the response:
+     * <pre>
+     * {"version":"k2f9x1.1234","sessions":[...],"deleted":["..."]}
+     * </pre>
+     * The client asks again with that version next time. Since 0 is a client with no sessions yet,
+     * which gets them all. When the changes after {@code since} are no longer all known, or the
+     * version is from another replica or an earlier start, the answer is 410 and the client reloads
+     * {@code /sessions} instead.
+     */
+    @GET
+    @Path("/changes")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Counted(monotonic = true,tags="app=session")
+    public void changes(@QueryParam("since") final String since, @Context final Request request,
+                        @Suspended final AsyncResponse response) throws Exception {
+        if (since == null) {
+            response.resume(Response.status(400).build());
+            return;
+        }
+        final long upTo = sessionStore.getSnapshot().getVersion();
+        final EntityTag tag = new EntityTag(sessionStore.token(upTo));
+        final Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        requestExecutors.bulk().submit(response, () -> delta(since, upTo, tag, notModified));
+    }
+
+    private Response delta(final String since, final long upTo, final EntityTag tag, final Response.ResponseBuilder notModified) {
+        final long from = sessionStore.version(since);
+        final List<ChangeLog.Change> changes = from >= 0 && from <= upTo ? sessionStore.changesSince(from, upTo) : null;
+        if (changes == null)
+            return Response.status(Response.Status.GONE).type(MediaType.TEXT_PLAIN)
+                .entity("Changes since version " + since + " are not available here; reload /sessions").build();
+        if (notModified != null)
+            return notModified.build();
+
+        final StreamingOutput delta = output -> {
+            output.write(("{\"version\":\"" + tag.getValue() + "\",\"sessions\":[").getBytes(StandardCharsets.UTF_8));
+            boolean first = true;
+            for (ChangeLog.Change change : changes) {
+                if (change.session != null) {
+                    if (!first)
+                        output.write(',');
+                    output.write(change.session.toJson());
+                    first = false;
+                }
+            }
+            output.write("],\"deleted\":[".getBytes(StandardCharsets.UTF_8));
+            first = true;
+            for (ChangeLog.Change change : changes) {
+                if (change.session == null) {
+                    if (!first)
+                        output.write(',');
+                    output.write(SessionWriter.quote(change.sessionId).getBytes(StandardCharsets.UTF_8));
+                    first = false;
+                }
+            }
+            output.write("]}".getBytes(StandardCharsets.UTF_8));
+        };
+        return Response.ok(delta).tag(tag).build();
+    }
+
     // For use as a k8s readinessProbe for this service
     @GET
     @Path("/nessProbe")
@@ -85,13 +376,22 @@ public class SessionResource {
 
     @GET
     @Path("/{sessionId}")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
     @Counted(monotonic = true,tags="app=session")
-    public Response retrieveSession(@PathParam("sessionId") final String sessionId) throws Exception {
+    public Response retrieveSession(@PathParam("sessionId") final String sessionId,
+                                    @Context final HttpHeaders headers) throws Exception {
         final Optional<Session> result = sessionStore.find(sessionId);
 
-        if (result.isPresent())
-            return Response.ok(result.get()).build();
+        if (result.isPresent()) {
+            final Session session = result.get();
+            final boolean binary = prefersCbor(headers);
+            final Response.ResponseBuilder notModified = notModified(headers, session.getStamp(), binary);
+            if (notModified != null)
+                return notModified.build();
+            return compressed("session:" + sessionId, session.getVersion(), session.getStamp(), binary,
+                headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING),
+                out -> out.write(session.toJson()), out -> out.write(session.toCbor()), session).build();
+        }
         else
             return Response.status(404).build();
 
@@ -99,30 +399,83 @@ public class SessionResource {
 
     @PUT
     @Path("/{sessionId}")
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
     @Counted(monotonic = true,tags="app=session")
-    public Response updateSession(@PathParam("sessionId") final String sessionId, final Session session) throws Exception {
-        final Optional<Session> updated = sessionStore.update(sessionId, session);
-        if (updated.isPresent())
-            return Response.ok(updated.get()).build();
-        else
-            return Response.status(404).build();
+    public Response updateSession(@PathParam("sessionId") final String sessionId, final Session session,
+                                  @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch,
+                                  @Context final HttpHeaders headers) throws Exception {
+        try {
+            final Optional<Session> updated = sessionStore.update(sessionId, session, expectedStamp(ifMatch));
+            final boolean binary = prefersCbor(headers);
+            if (updated.isPresent())
+                return negotiated(updated.get(), binary).tag(tag(updated.get().getStamp(), binary, null)).build();
+            else
+                return Response.status(404).build();
+        } catch (ConcurrentModificationException e) {
+            return Response.status(412).build();
+        }
     }
 
     @DELETE
     @Path("/{sessionId}")
     @Counted(monotonic = true,tags="app=session")
-    public Response deleteSession(@PathParam("sessionId") final String sessionId) throws Exception {
-        final Optional<Session> removed = sessionStore.remove(sessionId);
-        if (removed.isPresent())
-            return Response.ok().build();
-        else
-            return Response.status(404).build();
+    public Response deleteSession(@PathParam("sessionId") final String sessionId,
+                                  @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch) throws Exception {
+        try {
+            final Optional<Session> removed = sessionStore.remove(sessionId, expectedStamp(ifMatch));
+            if (removed.isPresent())
+                return Response.ok().build();
+            else
+                return Response.status(404).build();
+        } catch (ConcurrentModificationException e) {
+            return Response.status(412).build();
+        }
 
     }
 
-    //TODO Add Search
+    @GET
+    @Path("/search")
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
+    @Counted(monotonic = true,tags="app=session")
+    public void search(@QueryParam("q") final String query,
+                       @QueryParam("offset") @DefaultValue("0") final int offset,
+                       @QueryParam("limit") @DefaultValue("20") final int limit,
+                       @HeaderParam(Partitioning.LOCAL) final String localOnly,
+                       @HeaderParam(Partitioning.PEER) final String peer,
+                       @Context final HttpHeaders headers,
+                       @Context final UriInfo uriInfo,
+                       @Suspended final AsyncResponse response) throws Exception {
+        // Partitions are asked for the top offset + limit, which may be more than a client may ask for
+        final boolean fromPeer = localOnly != null && partitioning.isPeer(peer);
+        if (query == null || query.trim().isEmpty() || offset < 0 || limit < 1
+            || (limit > MAX_PAGE_SIZE && !fromPeer) || offset > Integer.MAX_VALUE - limit) {
+            response.resume(Response.status(400).build());
+            return;
+        }
+        final boolean binary = prefersCbor(headers);
+        if (partitioning.isEnabled() && !fromPeer) {
+            final URI relative = uriInfo.getBaseUri().relativize(uriInfo.getRequestUriBuilder()
+                .replaceQueryParam("offset", 0).replaceQueryParam("limit", offset + limit).build());
+            requestExecutors.listing().submit(response, () -> {
+                // Every partition ranks by the same score, so the top of the merge is the top overall
+                final List<Session> ranked = new ArrayList<>(sessionStore.search(query, 0, offset + limit));
+                for (List<Session> part : partitioning.gather(relative))
+                    ranked.addAll(part);
+                final Map<Session, Integer> scores = new IdentityHashMap<>();
+                for (Session session : ranked)
+                    scores.put(session, SearchIndex.score(session, query));
+                ranked.sort(Comparator.<Session>comparingInt(scores::get).reversed().thenComparing(Session::getId));
+                final List<Session> result = ranked.subList(Math.min(offset, ranked.size()), Math.min(offset + limit, ranked.size()));
+                return negotiated(new GenericEntity<List<Session>>(result) {}, binary).build();
+            });
+            return;
+        }
+        (fromPeer ? requestExecutors.peer() : requestExecutors.listing()).submit(response, () -> {
+            final List<Session> result = sessionStore.search(query, offset, limit);
+            return negotiated(new GenericEntity<List<Session>>(result) {}, binary).build();
+        });
+    }
 
     @GET
     @Path("/{sessionId}/speakers")
@@ -130,9 +483,7 @@ public class SessionResource {
     @Counted(monotonic = true,tags="app=session")
     public Response sessionSpeakers(@PathParam("sessionId") final String sessionId) throws Exception {
 
-        final Optional<Session> session = sessionStore.getSessions().stream()
-                .filter(s -> Objects.equals(s.getId(), sessionId))
-                .findFirst();
+        final Optional<Session> session = sessionStore.find(sessionId);
 
         if (session.isPresent())
             return Response.ok(session.get().getSpeakers()).build();
@@ -143,38 +494,152 @@ public class SessionResource {
 
     @PUT
     @Path("/{sessionId}/speakers/{speakerId}")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
     @Counted(monotonic = true,tags="app=session")
-    public Response addSessionSpeaker(@PathParam("sessionId") final String sessionId, @PathParam("speakerId") final String speakerId) throws Exception {
+    public Response addSessionSpeaker(@PathParam("sessionId") final String sessionId, @PathParam("speakerId") final String speakerId,
+                                      @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch,
+                                      @Context final HttpHeaders headers) throws Exception {
+        return changeSpeakers(sessionId, ifMatch, prefersCbor(headers), speakers -> speakers.add(speakerId));
+    }
 
-        final Optional<Session> result = sessionStore.find(sessionId);
+    @DELETE
+    @Path("/{sessionId}/speakers/{speakerId}")
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
+    @Counted(monotonic = true,tags="app=session")
+    public Response removeSessionSpeaker(@PathParam("sessionId") final String sessionId, @PathParam("speakerId") final String speakerId,
+                                         @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch,
+                                         @Context final HttpHeaders headers) throws Exception {
+        return changeSpeakers(sessionId, ifMatch, prefersCbor(headers), speakers -> speakers.remove(speakerId));
+    }
 
-        if (result.isPresent()) {
-            final Session session = result.get();
-            final Collection<String> speakers = session.getSpeakers();
-            speakers.add(speakerId);
-            sessionStore.update(sessionId, session);
-            return Response.ok(session).build();
+    private Response changeSpeakers(final String sessionId, final String ifMatch, final boolean binary,
+                                    final Consumer<Collection<String>> change) {
+        try {
+            final Optional<Session> result = sessionStore.compute(sessionId, expectedStamp(ifMatch), session -> {
+                final Collection<String> speakers = new ArrayList<>(session.getSpeakers());
+                change.accept(speakers);
+                return session.withSpeakers(speakers);
+            });
+            if (result.isPresent())
+                return negotiated(result.get(), binary).tag(tag(result.get().getStamp(), binary, null)).build();
+            else
+                return Response.status(404).build();
+        } catch (ConcurrentModificationException e) {
+            return Response.status(412).build();
         }
+    }
 
-        return Response.status(404).build();
+    /**
+     * A response with the entity compressed as the client accepts, from the response cache, or as
+     * it is when the client accepts no compression or the entity is too small to compress. The
+     * entity is CBOR when {@code binary}, and JSON otherwise, and is streamed out by its writer. It
+     * is cached by the store version it was read at, and tagged with {@code token} in the media type
+     * and coding it is sent with.
+     */
+    private Response.ResponseBuilder compressed(final String name, final long version, final String token, final boolean binary,
+                                                final String acceptEncoding, final ResponseCache.Content json,
+                                                final ResponseCache.Content cbor, final Object entity) {
+        final ResponseCache.Coding coding = ResponseCache.negotiate(acceptEncoding);
+        final byte[] encoded = coding != null
+            ? responseCache.get(binary ? name + ".cbor" : name, version, coding, binary ? cbor : json) : null;
+        final Response.ResponseBuilder response = encoded != null
+            ? Response.ok(encoded, binary ? CBOR_TYPE : MediaType.APPLICATION_JSON_TYPE).header(HttpHeaders.CONTENT_ENCODING, coding.token)
+                .tag(tag(token, binary, coding))
+            : Response.ok(entity, binary ? CBOR_TYPE : MediaType.APPLICATION_JSON_TYPE).tag(tag(token, binary, null));
+        return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
     }
 
-    @DELETE
-    @Path("/{sessionId}/speakers/{speakerId}")
-    @Counted(monotonic = true,tags="app=session")
-    public Response removeSessionSpeaker(@PathParam("sessionId") final String sessionId, @PathParam("speakerId") final String speakerId) throws Exception {
-        final Optional<Session> result = sessionStore.find(sessionId);
+    /**
+     * A response with the entity as CBOR when {@code binary}, and JSON otherwise. Which one depends
+     * on the Accept header, so caches are told to keep one per Accept.
+     */
+    static Response.ResponseBuilder negotiated(final Object entity, final boolean binary) {
+        return Response.ok(entity, binary ? CBOR_TYPE : MediaType.APPLICATION_JSON_TYPE)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
 
-        if (result.isPresent()) {
-            final Session session = result.get();
-            final Collection<String> speakers = session.getSpeakers();
-            speakers.remove(speakerId);
-            sessionStore.update(sessionId, session);
-            return Response.ok(session).build();
+    /**
+     * Whether CBOR comes before JSON in the client's Accept header. Wildcards count as JSON, so
+     * browsers and clients that say nothing get JSON.
+     */
+    static boolean prefersCbor(final HttpHeaders headers) {
+        for (MediaType type : headers.getAcceptableMediaTypes()) {
+            if (type.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+                return false;
+            if (type.isCompatible(CBOR_TYPE))
+                return true;
         }
+        return false;
+    }
+
+    /**
+     * The tag of a representation sent as CBOR when {@code binary} and JSON otherwise, with the
+     * content coding, or as it is when that is null. The token names what is sent: a session's
+     * stamp, which is the same on every replica, or a listing's store version token, which no other
+     * replica accepts. Each media type and coding is a different representation, so each has its
+     * own strong tag: {@code "12.a1"}, {@code "12.a1-gzip"}, {@code "12.a1-cbor"},
+     * {@code "12.a1-cbor-deflate"}.
+     */
+    private static EntityTag tag(final String token, final boolean binary, final ResponseCache.Coding coding) {
+        return new EntityTag(token + (binary ? CBOR_TAG : "") + (coding != null ? "-" + coding.token : ""));
+    }
+
+    /**
+     * The token a tag made by {@link #tag(String, boolean, ResponseCache.Coding)} names, in
+     * whichever media type and coding.
+     */
+    static String token(final EntityTag tag) {
+        final String value = withoutCoding(tag.getValue());
+        return value.endsWith(CBOR_TAG) ? value.substring(0, value.length() - CBOR_TAG.length()) : value;
+    }
+
+    private static String withoutCoding(final String value) {
+        for (ResponseCache.Coding coding : ResponseCache.Coding.values()) {
+            if (value.endsWith("-" + coding.token))
+                return value.substring(0, value.length() - coding.token.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * A 304 when the client's If-None-Match names the token in the media type it asks for, in
+     * any coding, or null. The client sends the same Accept-Encoding as before, so the coding it
+     * would get is the one it has.
+     */
+    private static Response.ResponseBuilder notModified(final HttpHeaders headers, final String token,
+                                                        final boolean binary) {
+        final String ifNoneMatch = headers.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null)
+            return null;
+        for (String listed : ifNoneMatch.split(",")) {
+            if (listed.trim().equals("*"))
+                return Response.notModified();
+            try {
+                final EntityTag tag = EntityTag.valueOf(listed.trim());
+                if (token(tag).equals(token) && withoutCoding(tag.getValue()).endsWith(CBOR_TAG) == binary)
+                    return Response.notModified(tag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            } catch (IllegalArgumentException e) {
+                // not a tag this store issued
+            }
+        }
+        return null;
+    }
 
-        return Response.status(404).build();
+    /**
+     * The session stamp an If-Match header asks for, which any replica can check. A weak or
+     * unreadable tag yields one that never matches, so the write fails its precondition.
+     */
+    private static String expectedStamp(final String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*"))
+            return SessionStore.ANY_STAMP;
+        try {
+            final EntityTag tag = EntityTag.valueOf(ifMatch.trim());
+            if (!tag.isWeak())
+                return token(tag);
+        } catch (IllegalArgumentException e) {
+            // falls through to a stamp that never matches
+        }
+        return "";
     }
 
     @POST
@@ -0,0 +1,259 @@
+package io.microprofile.showcase.session;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable view of every stored session as of exactly one store version, in id order.
+ * {@link SessionStore} publishes a new snapshot after writes and readers take the latest one with
+ * a single volatile read, so a listing never mixes sessions from before and after a write.
+ *
+ * The sessions are held in sorted chunks of at most {@code 2 * CHUNK}. The next snapshot shares
+ * every chunk a write did not touch, so a write costs copying one chunk and the array of chunks
+ * rather than every session.
+ */
+final class SessionSnapshot {
+
+    static final SessionSnapshot EMPTY = new SessionSnapshot(0, Collections.emptyList());
+
+    private static final int CHUNK = 64;
+
+    private static final Comparator<Session> BY_ID = Comparator.comparing(Session::getId);
+
+    private final long version;
+
+    // Each chunk is non-empty and in id order, and every id in a chunk precedes the next chunk's
+    private final Session[][] chunks;
+
+    // Position of each chunk's first session in the whole listing, then the size
+    private final int[] offsets;
+
+    private final List<Session> sessions = new Sessions();
+
+    /**
+     * @param sessions every session, in any order
+     */
+    SessionSnapshot(final long version, final Collection<Session> sessions) {
+        final Session[] sorted = sessions.toArray(new Session[sessions.size()]);
+        Arrays.sort(sorted, BY_ID);
+        final List<Session[]> chunks = new ArrayList<>(sorted.length / CHUNK + 1);
+        for (int from = 0; from < sorted.length; from += CHUNK) {
+            chunks.add(Arrays.copyOfRange(sorted, from, Math.min(from + CHUNK, sorted.length)));
+        }
+        this.version = version;
+        this.chunks = chunks.toArray(new Session[chunks.size()][]);
+        this.offsets = offsets(this.chunks);
+    }
+
+    private SessionSnapshot(final long version, final Session[][] chunks) {
+        this.version = version;
+        this.chunks = chunks;
+        this.offsets = offsets(chunks);
+    }
+
+    private static int[] offsets(final Session[][] chunks) {
+        final int[] offsets = new int[chunks.length + 1];
+        for (int i = 0; i < chunks.length; i++) {
+            offsets[i + 1] = offsets[i] + chunks[i].length;
+        }
+        return offsets;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    List<Session> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * This snapshot with the changes applied in order, as of the given version.
+     */
+    SessionSnapshot with(final long version, final List<ChangeLog.Change> changes) {
+        final List<Session[]> next = new ArrayList<>(Arrays.asList(chunks));
+        for (ChangeLog.Change change : changes) {
+            apply(next, change.sessionId, change.session);
+        }
+        return new SessionSnapshot(version, next.toArray(new Session[next.size()][]));
+    }
+
+    private static void apply(final List<Session[]> chunks, final String id, final Session session) {
+        if (chunks.isEmpty()) {
+            if (session != null) {
+                chunks.add(new Session[] {session});
+            }
+            return;
+        }
+        final int at = Math.max(0, chunkOf(chunks, id));
+        final Session[] chunk = chunks.get(at);
+        final int index = indexOf(chunk, id);
+        if (index >= 0 && session != null) {
+            final Session[] replaced = chunk.clone();
+            replaced[index] = session;
+            chunks.set(at, replaced);
+        }
+        else if (index >= 0) {
+            if (chunk.length == 1) {
+                chunks.remove(at);
+                return;
+            }
+            final Session[] removed = new Session[chunk.length - 1];
+            System.arraycopy(chunk, 0, removed, 0, index);
+            System.arraycopy(chunk, index + 1, removed, index, removed.length - index);
+            chunks.set(at, removed);
+            // Keep chunks from thinning out as sessions are removed
+            if (at + 1 < chunks.size() && removed.length + chunks.get(at + 1).length <= CHUNK) {
+                final Session[] following = chunks.remove(at + 1);
+                final Session[] merged = Arrays.copyOf(removed, removed.length + following.length);
+                System.arraycopy(following, 0, merged, removed.length, following.length);
+                chunks.set(at, merged);
+            }
+        }
+        else if (session != null) {
+            final int insertion = -index - 1;
+            final Session[] inserted = new Session[chunk.length + 1];
+            System.arraycopy(chunk, 0, inserted, 0, insertion);
+            inserted[insertion] = session;
+            System.arraycopy(chunk, insertion, inserted, insertion + 1, chunk.length - insertion);
+            if (inserted.length > 2 * CHUNK) {
+                chunks.set(at, Arrays.copyOfRange(inserted, 0, CHUNK));
+                chunks.add(at + 1, Arrays.copyOfRange(inserted, CHUNK, inserted.length));
+            }
+            else {
+                chunks.set(at, inserted);
+            }
+        }
+    }
+
+    /**
+     * The last chunk whose first id is at or before the id, or -1 when the id precedes them all.
+     */
+    private static int chunkOf(final List<Session[]> chunks, final String id) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (chunks.get(middle)[0].getId().compareTo(id) <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * The index of the id in the chunk, or {@code -(insertion point) - 1} when it is not there.
+     */
+    private static int indexOf(final Session[] chunk, final String id) {
+        int low = 0;
+        int high = chunk.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int order = chunk[middle].getId().compareTo(id);
+            if (order < 0) {
+                low = middle + 1;
+            }
+            else if (order > 0) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * Up to {@code limit} sessions following the given id, or from the first session when it is
+     * null. The id need not be in the snapshot.
+     */
+    List<Session> after(final String afterId, final int limit) {
+        int chunk = 0;
+        int index = 0;
+        if (afterId != null) {
+            chunk = Math.max(0, chunkOf(Arrays.asList(chunks), afterId));
+            if (chunk < chunks.length) {
+                final int found = indexOf(chunks[chunk], afterId);
+                index = found >= 0 ? found + 1 : -found - 1;
+            }
+        }
+        final List<Session> page = new ArrayList<>(Math.min(limit, offsets[chunks.length]));
+        for (; chunk < chunks.length && page.size() < limit; chunk++, index = 0) {
+            final Session[] sessions = chunks[chunk];
+            for (; index < sessions.length && page.size() < limit; index++) {
+                page.add(sessions[index]);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * The chunks read as one list.
+     */
+    private final class Sessions extends AbstractList<Session> implements RandomAccess {
+
+        @Override
+        public Session get(final int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            }
+            // The last chunk starting at or before the index
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                final int middle = (low + high + 1) >>> 1;
+                if (offsets[middle] <= index) {
+                    low = middle;
+                }
+                else {
+                    high = middle - 1;
+                }
+            }
+            return chunks[low][index - offsets[low]];
+        }
+
+        @Override
+        public int size() {
+            return offsets[chunks.length];
+        }
+
+        @Override
+        public Iterator<Session> iterator() {
+            return new Iterator<Session>() {
+
+                private int chunk;
+
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return chunk < chunks.length;
+                }
+
+                @Override
+                public Session next() {
+                    if (chunk >= chunks.length) {
+                        throw new NoSuchElementException();
+                    }
+                    final Session next = chunks[chunk][index];
+                    if (++index == chunks[chunk].length) {
+                        chunk++;
+                        index = 0;
+                    }
+                    return next;
+                }
+            };
+        }
+    }
+}
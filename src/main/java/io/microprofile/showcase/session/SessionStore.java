@@ -1,25 +1,66 @@
 package io.microprofile.showcase.session;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.metrics.Gauge;
 import org.eclipse.microprofile.metrics.MetricRegistry;
 import org.eclipse.microprofile.metrics.annotation.Counted;
 import org.eclipse.microprofile.metrics.annotation.Metered;
 
 import io.microprofile.showcase.bootstrap.BootstrapData;
-import io.microprofile.showcase.bootstrap.SessionFactory;
 
 /**
+ * Stored sessions are immutable values. Writes swap them with compare-and-set on the map entry,
+ * which stamps them with the next store version, and retry when another writer got there first, so
+ * no write takes a lock while it computes the new value. The secondary indexes then catch up with
+ * the entry under its map bin lock, see {@link #reconcile(String)}.
+ *
+ * Whole-store reads go through an immutable {@link SessionSnapshot}. A write is complete once it is
+ * journaled and indexed, and completed writes are folded into the next snapshot in version order,
+ * so a snapshot holds exactly the state at one store version. Whichever writer finds writes to fold
+ * folds all of them, changing only the snapshot chunks they touch; the others carry on. Each writer
+ * waits until a snapshot including its write is published before it returns.
+ *
+ * When {@code session.journal.dir} is set, every write is appended to a {@link FileSessionJournal}
+ * in that directory and the store is recovered from it at startup instead of from the bootstrap
+ * data. {@code session.journal.fsync} is {@code always} (the default), {@code interval} (every
+ * {@code session.journal.fsyncIntervalMillis}) or {@code never}; the journal is compacted into a
+ * snapshot every {@code session.journal.compactAfterRecords} records. A write the journal fails to
+ * hold is undone before the error reaches the client.
+ *
+ * Every write is stamped so that replicas can agree on it; with replication enabled the writes are
+ * also logged for other replicas, and theirs applied here when they win, see {@link Replicator}.
+ *
  * @author Heiko Braun
  * @since 16/09/16
  */
@@ -27,38 +68,227 @@ import io.microprofile.showcase.bootstrap.SessionFactory;
 @Metered(name="io.microprofile.showcase.session.SessionStore.Type.Metered",tags="app=session")
 public class SessionStore {
 
+    // Only resolved when there is no bootstrap snapshot, so the bootstrap JSON is not parsed otherwise
     @Inject
-    BootstrapData bootstrapData;
+    Instance<BootstrapData> bootstrapData;
     @Inject
 	MetricRegistry metrics;
-    
+    @Inject
+    @ConfigProperty(name="session.journal.dir")
+    Optional<String> journalDirectory;
+    @Inject
+    @ConfigProperty(name="session.journal.fsync", defaultValue="always")
+    String journalFsync;
+    @Inject
+    @ConfigProperty(name="session.journal.fsyncIntervalMillis", defaultValue="1000")
+    long journalFsyncIntervalMillis;
+    @Inject
+    @ConfigProperty(name="session.journal.compactAfterRecords", defaultValue="100000")
+    long journalCompactAfterRecords;
+    @Inject
+    @ConfigProperty(name="session.changes.maxTombstones", defaultValue="10000")
+    int maxTombstones;
+
+    /**
+     * Accepted by {@link #compute}, {@link #update} and {@link #remove} in place of a stamp to
+     * write whatever is stored.
+     */
+    public static final String ANY_STAMP = "*";
 
     private final ConcurrentHashMap<String, Session> storage = new ConcurrentHashMap<>();
 
+    // The session each id is currently indexed as; lags storage until reconcile(id) runs
+    private final ConcurrentHashMap<String, Session> indexed = new ConcurrentHashMap<>();
+
+    // Compare-and-set attempts lost to a concurrent writer
+    private final LongAdder writeRetries = new LongAdder();
+
+    // Completed writes not yet in a snapshot, by store version
+    private final ConcurrentSkipListMap<Long, ChangeLog.Change> completed = new ConcurrentSkipListMap<>();
+
+    // Held by the writer folding completed writes into the next snapshot
+    private final Lock folding = new ReentrantLock();
+
+    // Notified whenever a snapshot is published, for writers waiting on theirs
+    private final Object publisher = new Object();
+
+    private volatile SessionSnapshot snapshot = SessionSnapshot.EMPTY;
+
+    // Bumped on every save, update and remove; responses are tagged with published versions instead,
+    // see getVersion()
+    private final AtomicLong version = new AtomicLong();
+
+    // Names this store in the version tokens it hands out, see token(long)
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    private final SearchIndex searchIndex = new SearchIndex();
+
+    private final SpeakerIndex speakerIndex = new SpeakerIndex();
+
+    private final ScheduleIndex scheduleIndex = new ScheduleIndex();
+
+    // Replaced in initStore once the tombstone limit is configured
+    private ChangeLog changeLog = new ChangeLog(10000);
+
+    private SessionJournal journal = SessionJournal.NONE;
+
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Keeps nothing until replication is enabled, but stamps every write either way
+    private volatile ReplicationLog replication = new ReplicationLog(UUID.randomUUID().toString(), 0);
+
+    // Removals, so that older writes from other replicas do not bring sessions back; only kept
+    // while replicating, and until pruneTombstones forgets them
+    private final ConcurrentHashMap<String, ReplicationLog.Op> tombstones = new ConcurrentHashMap<>();
+
+    // Ids dropped by handedOff whose removal the indexes have yet to see; not a change to report
+    private final Set<String> movedAway = ConcurrentHashMap.newKeySet();
+
+    // Which new ids this store may hand out; every one unless partitioned
+    private volatile Predicate<String> owned = id -> true;
+
     public Session save(final Session session) {
-        session.setId(UUID.randomUUID().toString());
-        storage.put(session.getId(), session);
-        return session;
+        final Session stored = insert(session);
+        durable(() -> undo(stored.getId(), stored, null));
+        publish(stored.getVersion());
+        return stored;
+    }
+
+    /**
+     * Saves a batch of new sessions, assigning each one an id. The batch is published as one
+     * snapshot.
+     */
+    public List<Session> saveAll(final List<Session> sessions) {
+        final List<Session> stored = sessions.stream().map(this::insert).collect(Collectors.toList());
+        if (!stored.isEmpty()) {
+            durable(() -> stored.forEach(written -> undo(written.getId(), written, null)));
+            publish(stored.get(stored.size() - 1).getVersion());
+        }
+        return stored;
+    }
+
+    private Session insert(final Session session) {
+        String id;
+        do {
+            id = UUID.randomUUID().toString();
+        } while (!owned.test(id));
+        final Session stored = storage.compute(id, (key, current) -> session.stored(key, version.incrementAndGet(),
+            replication.tick(), replication.getOrigin()));
+        replication.local(id, stored.getLamport(), stored);
+        written(id, stored.getVersion(), stored);
+        return stored;
     }
 
     @PostConstruct
     private void initStore() {
-        Logger.getLogger(SessionStore.class.getName()).log(Level.INFO, "Initialise sessions from bootstrap data");
-		Gauge<Long> gauge = metrics.getGauges().get("io.microprofile.showcase.session.SessionStore.sessionGauge");
-		if (gauge == null) {
-			gauge = () -> { return (long) storage.size(); }; 
-			metrics.register("io.microprofile.showcase.session.SessionStore.sessionGauge", gauge);
-		}
+        gauge("sessionGauge", () -> (long) storage.size());
+        gauge("searchIndexSize", () -> (long) searchIndex.size());
+        gauge("speakerIndexSize", () -> (long) speakerIndex.size());
+        gauge("scheduleIndexSize", () -> (long) scheduleIndex.size());
+        gauge("stringPoolSize", () -> (long) StringPool.size());
+        gauge("writeRetries", this::getWriteRetries);
+        gauge("changeLogSize", () -> (long) changeLog.size());
+        gauge("jsonCacheHitRatio", Session::jsonCacheHitRatio);
 
+        final Logger logger = Logger.getLogger(SessionStore.class.getName());
+        if (journalDirectory != null && journalDirectory.isPresent()) {
+            journal = new FileSessionJournal(Paths.get(journalDirectory.get()),
+                FileSessionJournal.Fsync.valueOf(journalFsync.trim().toUpperCase(Locale.ROOT)),
+                journalFsyncIntervalMillis, journalCompactAfterRecords);
+        }
 
-        bootstrapData.getSessions()
-            .forEach(bootstrap -> storage.put(bootstrap.getId(), SessionFactory.fromBootstrap(bootstrap)));
+        changeLog = new ChangeLog(maxTombstones);
+        final long started = System.nanoTime();
+        SessionSnapshot initial = journal.recover();
+        final boolean bootstrap = initial.getVersion() == 0;
+        if (bootstrap) {
+            final Optional<SessionSnapshot> packaged = BootstrapSnapshot.load();
+            if (packaged.isPresent()) {
+                logger.log(Level.INFO, "Initialise sessions from the bootstrap snapshot");
+                initial = packaged.get();
+            }
+            else {
+                logger.log(Level.INFO, "Initialise sessions from bootstrap data");
+                initial = BootstrapSnapshot.fromBootstrap(bootstrapData.get());
+            }
+        }
+        for (Session session : initial.getSessions()) {
+            storage.put(session.getId(), session);
+            reconcile(session.getId());
+        }
+        version.set(initial.getVersion());
+        // Nothing is known about what was removed before startup
+        changeLog.setHorizon(initial.getVersion());
+        snapshot = new SessionSnapshot(initial.getVersion(), initial.getSessions());
+        logger.log(Level.INFO, "Loaded {0} sessions at version {1} in {2} ms", new Object[] {storage.size(),
+            initial.getVersion(), (System.nanoTime() - started) / 1_000_000});
 
-}
+        journal.start(() -> {
+            publish(version.get());
+            return snapshot;
+        });
+        if (bootstrap) {
+            journal.compact();
+        }
+    }
+
+    private void gauge(final String name, final Gauge<?> gauge) {
+        final String qualified = "io.microprofile.showcase.session.SessionStore." + name;
+        if (metrics.getGauges().get(qualified) == null) {
+            metrics.register(qualified, gauge);
+        }
+    }
+
+    @PreDestroy
+    private void closeStore() {
+        journal.close();
+    }
     
     @Counted(monotonic = true,tags="app=session")
     public Collection<Session> getSessions() {
-        return storage.values();
+        return snapshot.getSessions();
+    }
+
+    /**
+     * The latest published snapshot; it includes every write that has returned.
+     */
+    SessionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The version of the latest published snapshot. Versions are handed out before writes are
+     * visible, so every write up to this one is visible, but not necessarily any later one.
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * What clients are given for store version {@code version}. Every replica numbers its versions
+     * on its own, and afresh on every start, so the token also names this store instance, and means
+     * nothing anywhere else.
+     */
+    String token(final long version) {
+        return instance + "." + version;
+    }
+
+    /**
+     * The version a token from {@link #token(long)} names, or -1 when another replica or an earlier
+     * start made it. {@code 0}, a client that has seen nothing yet, is version 0 anywhere.
+     */
+    long version(final String token) {
+        if (token.equals("0")) {
+            return 0;
+        }
+        if (!token.startsWith(instance + ".")) {
+            return -1;
+        }
+        try {
+            return Math.max(-1, Long.parseLong(token.substring(instance.length() + 1)));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     public Optional<Session> find(final String sessionId) {
@@ -66,20 +296,486 @@ public class SessionStore {
         return result!=null ? Optional.of(result) : Optional.empty();
     }
 
-    public Optional<Session> update(final String sessionId, final Session session) {
-        final Optional<Session> existing = find(sessionId);
-        if(existing.isPresent()) {
-            session.setId(sessionId);
-            storage.put(sessionId, session);
+    public long getWriteRetries() {
+        return writeRetries.sum();
+    }
+
+    /**
+     * Atomically replaces a stored session with the result of applying the mutation to it. The
+     * mutation may run more than once when writers race, and must not have side effects.
+     *
+     * @param expectedStamp the stamp of the write the session must be at, see {@link Session#getStamp()},
+     * or {@link #ANY_STAMP}
+     * @return the stored result, or empty when there is no session with that id
+     * @throws ConcurrentModificationException when the stored session is not at the expected stamp
+     */
+    public Optional<Session> compute(final String sessionId, final String expectedStamp, final UnaryOperator<Session> mutation) {
+        final Session[] previous = new Session[1];
+        final Optional<Session> result = swapping(() -> {
+            final Session current = storage.get(sessionId);
+            if (current == null) {
+                return Optional.empty();
+            }
+            checkStamp(current, expectedStamp);
+            previous[0] = current;
+            final Session changed = mutation.apply(current);
+            final Session[] next = new Session[1];
+            storage.computeIfPresent(sessionId, (id, stored) -> stored != current ? stored
+                : (next[0] = changed.stored(id, version.incrementAndGet(), replication.tick(), replication.getOrigin())));
+            if (next[0] == null) {
+                return null;
+            }
+            replication.local(sessionId, next[0].getLamport(), next[0]);
+            written(sessionId, next[0].getVersion(), next[0]);
+            return Optional.of(next[0]);
+        });
+        if (result.isPresent()) {
+            durable(() -> undo(sessionId, result.get(), previous[0]));
+            publish(result.get().getVersion());
         }
-        return existing;
+        return result;
+    }
+
+    public Optional<Session> update(final String sessionId, final Session session) {
+        return update(sessionId, session, ANY_STAMP);
+    }
+
+    public Optional<Session> update(final String sessionId, final Session session, final String expectedStamp) {
+        return compute(sessionId, expectedStamp, current -> session);
     }
 
     public Optional<Session> remove(final String sessionId) {
-        final Optional<Session> existing = find(sessionId);
-        if(existing.isPresent()) {
-            storage.remove(existing.get().getId());
+        return remove(sessionId, ANY_STAMP);
+    }
+
+    /**
+     * @return the removed session, or empty when there is no session with that id
+     * @throws ConcurrentModificationException when the stored session is not at the expected stamp
+     */
+    public Optional<Session> remove(final String sessionId, final String expectedStamp) {
+        final long[] removedAt = new long[1];
+        final Optional<Session> result = swapping(() -> {
+            final Session current = storage.get(sessionId);
+            if (current == null) {
+                return Optional.empty();
+            }
+            checkStamp(current, expectedStamp);
+            final ReplicationLog.Op[] tombstone = new ReplicationLog.Op[1];
+            storage.computeIfPresent(sessionId, (id, stored) -> {
+                if (stored != current) {
+                    return stored;
+                }
+                // Laid down with the removal, so that no older replicated write can bring it back
+                tombstone[0] = new ReplicationLog.Op(replication.getOrigin(), 0, replication.tick(), id, null);
+                if (replication.isEnabled()) {
+                    tombstones.put(id, tombstone[0]);
+                }
+                removedAt[0] = version.incrementAndGet();
+                return null;
+            });
+            if (tombstone[0] == null) {
+                return null;
+            }
+            replication.local(sessionId, tombstone[0].lamport, null);
+            written(sessionId, removedAt[0], null);
+            return Optional.of(current);
+        });
+        if (result.isPresent()) {
+            durable(() -> undo(sessionId, null, result.get()));
+            publish(removedAt[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Drops a session handed off to the instance that now owns it, see {@link Partitioning}. The
+     * session still exists there, so unlike {@link #remove} this is not a change: it leaves no
+     * tombstone, and is not in {@link #changesSince}, told to listeners or replicated. It is
+     * journaled, but not waited for, since nothing is acknowledged; a session the journal lost is
+     * handed off again after a restart.
+     *
+     * @return the dropped session, or empty when there is no session with that id
+     * @throws ConcurrentModificationException when the stored session is not at the expected stamp
+     */
+    Optional<Session> handedOff(final String sessionId, final String expectedStamp) {
+        final long[] removedAt = new long[1];
+        final Optional<Session> result = swapping(() -> {
+            final Session current = storage.get(sessionId);
+            if (current == null) {
+                return Optional.empty();
+            }
+            checkStamp(current, expectedStamp);
+            storage.computeIfPresent(sessionId, (id, stored) -> {
+                if (stored != current) {
+                    return stored;
+                }
+                // Marked under the same lock reconcile takes, so the removal it sees is this one
+                movedAway.add(id);
+                removedAt[0] = version.incrementAndGet();
+                return null;
+            });
+            if (removedAt[0] == 0) {
+                return null;
+            }
+            written(sessionId, removedAt[0], null);
+            return Optional.of(current);
+        });
+        if (result.isPresent()) {
+            publish(removedAt[0]);
+        }
+        return result;
+    }
+
+    private static void checkStamp(final Session current, final String expectedStamp) {
+        if (!ANY_STAMP.equals(expectedStamp) && !current.getStamp().equals(expectedStamp)) {
+            throw new ConcurrentModificationException("Session " + current.getId() + " is at "
+                + current.getStamp() + ", not " + expectedStamp);
+        }
+    }
+
+    /**
+     * Ranked full-text search over title, abstract, code, type and speakers.
+     */
+    public List<Session> search(final String query, final int offset, final int limit) {
+        return searchIndex.search(query, offset, limit).stream()
+            .map(storage::get)
+            .filter(session -> session != null)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The sessions given by a speaker, looked up through the speaker index.
+     */
+    public List<Session> findBySpeaker(final String speakerId) {
+        return speakerIndex.sessionIds(speakerId).stream()
+            .map(storage::get)
+            .filter(session -> session != null)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The sessions scheduled in slots {@code [from, to]}, in schedule order.
+     */
+    public List<Session> findBySchedule(final int from, final int to) {
+        return scheduleIndex.sessionIds(from, to).stream()
+            .map(storage::get)
+            .filter(session -> session != null)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The latest change to each session changed after {@code since}, up to and including
+     * {@code upTo}, which should be a published snapshot version so that every change up to it is
+     * complete.
+     *
+     * @return the changes in version order, or null when changes after {@code since} are no longer
+     * all known and the client has to reload everything
+     */
+    List<ChangeLog.Change> changesSince(final long since, final long upTo) {
+        return changeLog.changes(since, upTo);
+    }
+
+    /**
+     * Starts keeping a log of writes for other replicas, see {@link Replicator}. Writes made
+     * before this are only passed on with the whole state.
+     *
+     * @param origin this replica's name for its writes, different on every start
+     */
+    void enableReplication(final String origin, final int maxLogEntries) {
+        replication = new ReplicationLog(origin, maxLogEntries);
+    }
+
+    ReplicationLog getReplicationLog() {
+        return replication;
+    }
+
+    /**
+     * Applies writes from other replicas that win over what is stored, see {@link ReplicationLog}.
+     * They are published as one snapshot.
+     *
+     * @return how many changed the store
+     */
+    int replicate(final List<ReplicationLog.Op> ops) {
+        long appliedAt = 0;
+        int applied = 0;
+        for (ReplicationLog.Op op : ops) {
+            replication.observe(op.lamport);
+            final long at = apply(op);
+            if (at != 0) {
+                appliedAt = Math.max(appliedAt, at);
+                applied++;
+            }
+        }
+        if (applied > 0) {
+            publish(appliedAt);
+            journal.sync();
+        }
+        return applied;
+    }
+
+    /**
+     * @return the store version the write was applied at, or 0 when it lost
+     */
+    private long apply(final ReplicationLog.Op op) {
+        final long[] appliedAt = new long[1];
+        final Session next = storage.compute(op.sessionId, (id, current) -> {
+            final ReplicationLog.Op tombstone = tombstones.get(id);
+            if (current != null ? !op.newerThan(current.getLamport(), current.getOrigin())
+                    : tombstone != null && !op.newerThan(tombstone.lamport, tombstone.origin)) {
+                return current;
+            }
+            if (op.session == null) {
+                tombstones.put(id, op);
+                if (current != null) {
+                    appliedAt[0] = version.incrementAndGet();
+                }
+                return null;
+            }
+            tombstones.remove(id);
+            appliedAt[0] = version.incrementAndGet();
+            return op.session.stored(id, appliedAt[0], op.lamport, op.origin);
+        });
+        if (appliedAt[0] != 0) {
+            written(op.sessionId, appliedAt[0], next);
+        }
+        return appliedAt[0];
+    }
+
+    /**
+     * Every stored session and tombstone as a write, for a replica too far behind to be sent the
+     * log.
+     */
+    List<ReplicationLog.Op> replicationState() {
+        final List<ReplicationLog.Op> state = new ArrayList<>(storage.size() + tombstones.size());
+        for (Session session : storage.values()) {
+            state.add(ReplicationLog.Op.of(session));
+        }
+        state.addAll(tombstones.values());
+        return state;
+    }
+
+    /**
+     * Limits the ids given to new sessions to those the predicate accepts, so that sessions are
+     * created in the partition they belong to. The predicate must accept some ids.
+     */
+    void ownIds(final Predicate<String> owned) {
+        this.owned = owned;
+    }
+
+    /**
+     * Forgets the tombstones stamped before the given time, in milliseconds. A replica that comes
+     * back with a write older than a forgotten tombstone brings the session back, so the horizon
+     * must be longer than any replica stays away.
+     *
+     * @return how many were forgotten
+     */
+    int pruneTombstones(final long before) {
+        final int[] pruned = new int[1];
+        for (ReplicationLog.Op tombstone : tombstones.values()) {
+            if (tombstone.lamport < before) {
+                // Under the id's bin lock, so no replicated write is being decided against it
+                storage.compute(tombstone.sessionId, (id, current) -> {
+                    if (current == null && tombstones.remove(id, tombstone)) {
+                        pruned[0]++;
+                    }
+                    return current;
+                });
+            }
+        }
+        return pruned[0];
+    }
+
+    int getTombstoneCount() {
+        return tombstones.size();
+    }
+
+    /**
+     * Registers a listener for every change from now on.
+     */
+    void addListener(final SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Waits for the journal to hold the writes made so far, and undoes this thread's write when it
+     * does not, so that a write reported as failed is not kept in memory either.
+     *
+     * @throws java.io.UncheckedIOException when the journal could not be written
+     */
+    private void durable(final Runnable undo) {
+        try {
+            journal.sync();
+        } catch (RuntimeException e) {
+            try {
+                undo.run();
+            } catch (RuntimeException undoFailed) {
+                e.addSuppressed(undoFailed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Puts back what was stored before a write, unless the id has been written again since. The
+     * undo is a write of its own, at the next store version.
+     *
+     * @param written what the write stored, or null for a removal
+     * @param previous what was stored before, or null for a new session
+     */
+    private void undo(final String sessionId, final Session written, final Session previous) {
+        final long[] at = new long[1];
+        final long[] lamport = new long[1];
+        final Session restored = storage.compute(sessionId, (id, current) -> {
+            if (current != written) {
+                return current;
+            }
+            at[0] = version.incrementAndGet();
+            lamport[0] = replication.tick();
+            final Session value = previous != null ? previous.stored(id, at[0], lamport[0], replication.getOrigin()) : null;
+            if (value == null && replication.isEnabled()) {
+                tombstones.put(id, new ReplicationLog.Op(replication.getOrigin(), 0, lamport[0], id, null));
+            }
+            else if (value != null) {
+                tombstones.remove(id);
+            }
+            return value;
+        });
+        if (at[0] != 0) {
+            replication.local(sessionId, lamport[0], restored);
+            written(sessionId, at[0], restored);
+        }
+    }
+
+    /**
+     * Runs a compare-and-set write until it does not lose to another writer, which it shows by
+     * returning null.
+     */
+    private <T> T swapping(final Supplier<T> write) {
+        while (true) {
+            final T result = write.get();
+            if (result != null) {
+                return result;
+            }
+            writeRetries.increment();
+        }
+    }
+
+    /**
+     * Journals and indexes a write just stored at the given version, then marks it complete so it
+     * can be published.
+     *
+     * @param session the session stored, or null when it was removed
+     */
+    private void written(final String sessionId, final long at, final Session session) {
+        try {
+            if (session != null) {
+                journal.stored(session);
+            }
+            else {
+                journal.removed(sessionId, at);
+            }
+            reconcile(sessionId);
+        } finally {
+            // Later writes wait on this one, so it is completed whatever happened
+            completed.put(at, new ChangeLog.Change(at, sessionId, session));
+            fold();
+        }
+    }
+
+    /**
+     * Folds the completed writes that follow the snapshot into the next one, unless another writer
+     * is already doing so. That writer checks again once done, so nothing is left behind.
+     */
+    private void fold() {
+        while (isNextCompleted() && folding.tryLock()) {
+            try {
+                final SessionSnapshot current = snapshot;
+                long upTo = current.getVersion();
+                final List<ChangeLog.Change> changes = new ArrayList<>();
+                for (Map.Entry<Long, ChangeLog.Change> next = completed.firstEntry();
+                     next != null && next.getKey() == upTo + 1; next = completed.firstEntry()) {
+                    changes.add(next.getValue());
+                    completed.remove(next.getKey());
+                    upTo++;
+                }
+                if (!changes.isEmpty()) {
+                    snapshot = current.with(upTo, changes);
+                }
+            } finally {
+                folding.unlock();
+            }
+            synchronized (publisher) {
+                publisher.notifyAll();
+            }
+        }
+    }
+
+    private boolean isNextCompleted() {
+        final Map.Entry<Long, ChangeLog.Change> next = completed.firstEntry();
+        return next != null && next.getKey() == snapshot.getVersion() + 1;
+    }
+
+    /**
+     * Returns once a snapshot at or after the given version is published. Writes complete out of
+     * order, so one may have to wait for the writes before it, which publish it along with theirs.
+     */
+    private void publish(final long writtenVersion) {
+        fold();
+        synchronized (publisher) {
+            while (snapshot.getVersion() < writtenVersion) {
+                try {
+                    publisher.wait();
+                } catch (InterruptedException e) {
+                    // The write is done and will be published regardless
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the indexes up to date with whatever is stored under the id. Every writer calls this
+     * after its compare-and-set; the calls for one id are serialised by the map's bin lock, and the
+     * last of them always sees the final value, so the indexes converge on the stored state
+     * however the writers interleave.
+     */
+    private void reconcile(final String sessionId) {
+        storage.compute(sessionId, (id, current) -> {
+            final Session previous = current != null ? indexed.put(id, current) : indexed.remove(id);
+            final boolean moved = movedAway.remove(id);
+            if (previous != current) {
+                reindex(previous, current, moved && current == null);
+            }
+            return current;
+        });
+    }
+
+    private void reindex(final Session previous, final Session current, final boolean moved) {
+        if (previous != null) {
+            searchIndex.remove(previous);
+            speakerIndex.remove(previous);
+            scheduleIndex.remove(previous);
+        }
+        if (current != null) {
+            searchIndex.add(current);
+            speakerIndex.add(current);
+            scheduleIndex.add(current);
+        }
+        if (moved) {
+            changeLog.forget(previous.getId());
+            return;
+        }
+        // A removal's own version is not at hand here; the current one is at least as new, which at
+        // worst sends a client the tombstone twice
+        if (current != null) {
+            changeLog.record(current.getId(), current.getVersion(), current);
+        }
+        else {
+            changeLog.record(previous.getId(), version.get(), null);
+        }
+        for (SessionListener listener : listeners) {
+            listener.changed(previous, current);
         }
-        return existing;
     }
 }
@@ -1,13 +1,12 @@
 package io.microprofile.showcase.session;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.ext.Provider;
@@ -18,38 +17,75 @@ import javax.ws.rs.core.MultivaluedMap;
 
 @Provider
 @Produces(MediaType.APPLICATION_JSON)
-public class SessionWriter implements MessageBodyWriter<Session> { 
+public class SessionWriter implements MessageBodyWriter<Session> {
 
     public SessionWriter() {}
 
     @Override
     public void writeTo(Session session, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType,
-                    MultivaluedMap<String, Object> map, OutputStream os) throws IOException, WebApplicationException 
+                    MultivaluedMap<String, Object> map, OutputStream os) throws IOException, WebApplicationException
     {
-        JsonArrayBuilder speakers = Json.createArrayBuilder();
-        for (String s : session.getSpeakers()) { 
-            speakers.add (s);
+        os.write(session.toJson());
+    }
+
+    /**
+     * Encodes a session as UTF-8 JSON. Sessions cache the result, see {@link Session#toJson()}.
+     */
+    static byte[] encode(Session session) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        JsonGenerator generator = Json.createGenerator(bytes);
+        generator.writeStartObject();
+        write(generator, "id", session.getId());
+        write(generator, "abstract", session.getAbstract());
+        write(generator, "title", session.getTitle());
+        write(generator, "code", session.getCode());
+        write(generator, "type", session.getType());
+        generator.writeStartArray("speakers");
+        for (String s : session.getSpeakers()) {
+            generator.write(s);
+        }
+        generator.writeEnd()
+            .write("schedule", session.getSchedule())
+            .writeEnd();
+        generator.close();
+        return bytes.toByteArray();
+    }
+
+    private static void write(JsonGenerator generator, String name, String value) {
+        if (value != null) {
+            generator.write(name, value);
+        }
+        else {
+            generator.writeNull(name);
         }
-        JsonObject obj = Json.createObjectBuilder()
-            .add("id", session.getId())
-            .add("abstract", session.getAbstract())
-            .add("title", session.getTitle())
-            .add("code", session.getCode())
-            .add("type", session.getType())
-            .add("speakers", speakers.build())
-            .add("schedule", session.getSchedule())
-            .build();
-        JsonWriter jsonWriter = Json.createWriter(os);
-        jsonWriter.write(obj);
-        jsonWriter.close();
+    }
+
+    /**
+     * A string as a JSON string literal.
+     */
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
     }
 
     @Override
-    public long getSize(Session attendee, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
-        return 0;
+    public long getSize(Session session, Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
+        // The container sends it as Content-Length; writeTo counts the write in the hit ratio
+        return session.encodedJson().length;
     }
 
-    @Override 
+    @Override
     public boolean isWriteable (Class<?> clazz, Type type, Annotation[] annotations, MediaType mediaType) {
         return clazz.equals(Session.class);
     }
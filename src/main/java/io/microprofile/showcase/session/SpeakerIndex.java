@@ -0,0 +1,42 @@
+package io.microprofile.showcase.session;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index from speaker id to the ids of the sessions that speaker gives, maintained
+ * incrementally by {@link SessionStore}.
+ */
+class SpeakerIndex {
+
+    private final ConcurrentHashMap<String, Set<String>> sessionsBySpeaker = new ConcurrentHashMap<>();
+
+    void add(final Session session) {
+        for (String speaker : session.getSpeakers()) {
+            sessionsBySpeaker.compute(speaker, (s, ids) -> {
+                final Set<String> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                result.add(session.getId());
+                return result;
+            });
+        }
+    }
+
+    void remove(final Session session) {
+        for (String speaker : session.getSpeakers()) {
+            sessionsBySpeaker.computeIfPresent(speaker, (s, ids) -> {
+                ids.remove(session.getId());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    int size() {
+        return sessionsBySpeaker.size();
+    }
+
+    Set<String> sessionIds(final String speaker) {
+        final Set<String> ids = sessionsBySpeaker.get(speaker);
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.emptySet();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Microprofile.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.microprofile.showcase.session;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.eclipse.microprofile.metrics.annotation.Counted;
+
+/**
+ * Session lookups by speaker, answered from the store's speaker index, and from every partition's
+ * when partitioned, see {@link Partitioning}. They run on the listing executor, or the peer
+ * executor for another partition's request, like the session listing, see {@link RequestExecutors}.
+ */
+@Path("speakers")
+@ApplicationScoped
+public class SpeakerResource {
+
+    private static final Comparator<Session> BY_ID = Comparator.comparing(Session::getId);
+
+    @Inject
+    private SessionStore sessionStore;
+
+    @Inject
+    private Partitioning partitioning;
+
+    @Inject
+    private RequestExecutors requestExecutors;
+
+    @GET
+    @Path("/{speakerId}/sessions")
+    @Produces({MediaType.APPLICATION_JSON, SessionCbor.MEDIA_TYPE})
+    @Counted(monotonic = true,tags="app=session")
+    public void speakerSessions(@PathParam("speakerId") final String speakerId,
+                                @HeaderParam(Partitioning.LOCAL) final String localOnly,
+                                @HeaderParam(Partitioning.PEER) final String peer,
+                                @Context final HttpHeaders headers,
+                                @Context final UriInfo uriInfo,
+                                @Suspended final AsyncResponse response) throws Exception {
+        // Another partition asking for this one's part
+        final boolean fromPeer = localOnly != null && partitioning.isPeer(peer);
+        // Read what the work needs from the request here, on the request thread
+        final boolean binary = SessionResource.prefersCbor(headers);
+        final URI relative = uriInfo.getBaseUri().relativize(uriInfo.getRequestUri());
+        (fromPeer ? requestExecutors.peer() : requestExecutors.listing()).submit(response, () -> {
+            final List<Session> sessions = new ArrayList<>(sessionStore.findBySpeaker(speakerId));
+            if (partitioning.isEnabled() && !fromPeer) {
+                for (List<Session> part : partitioning.gather(relative))
+                    sessions.addAll(part);
+            }
+            sessions.sort(BY_ID);
+            return SessionResource.negotiated(new GenericEntity<List<Session>>(sessions) {}, binary).build();
+        });
+    }
+}
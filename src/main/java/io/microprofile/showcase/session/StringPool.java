@@ -0,0 +1,37 @@
+package io.microprofile.showcase.session;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deduplicates the values many sessions repeat, such as the session type and speaker ids, so
+ * every session shares one instance of each. The pool stops growing once it holds
+ * {@link #MAX_SIZE} values; anything new after that is simply not shared.
+ */
+final class StringPool {
+
+    static final int MAX_SIZE = 1 << 16;
+
+    private static final ConcurrentHashMap<String, String> POOL = new ConcurrentHashMap<>();
+
+    private StringPool() {
+    }
+
+    static int size() {
+        return POOL.size();
+    }
+
+    static String intern(final String value) {
+        if (value == null) {
+            return null;
+        }
+        final String pooled = POOL.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (POOL.size() >= MAX_SIZE) {
+            return value;
+        }
+        final String raced = POOL.putIfAbsent(value, value);
+        return raced != null ? raced : value;
+    }
+}
@@ -0,0 +1,87 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Deltas from a change log, and the horizon past which it answers null, which clients see as a 410.
+ */
+public class ChangeLogTest {
+
+    private static Session session(final String id, final long version) {
+        return new Session(null, "title " + id, "abstract", "code", "talk", Collections.singletonList("speaker"), 1)
+            .stored(id, version);
+    }
+
+    private static void stored(final ChangeLog log, final String id, final long version) {
+        log.record(id, version, session(id, version));
+    }
+
+    /**
+     * Each change as id@version, with a minus for a tombstone.
+     */
+    private static List<String> describe(final List<ChangeLog.Change> changes) {
+        final List<String> described = new ArrayList<>();
+        for (ChangeLog.Change change : changes) {
+            described.add((change.session == null ? "-" : "") + change.sessionId + "@" + change.version);
+        }
+        return described;
+    }
+
+    @Test
+    public void onlyTheLatestChangeToAnIdIsKept() {
+        final ChangeLog log = new ChangeLog(10);
+        stored(log, "a", 1);
+        stored(log, "b", 2);
+        stored(log, "a", 3);
+        assertEquals(Arrays.asList("b@2", "a@3"), describe(log.changes(0, 3)));
+        assertEquals(Arrays.asList("a@3"), describe(log.changes(2, 3)));
+        assertEquals(Arrays.asList("b@2"), describe(log.changes(0, 2)));
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    public void tombstonesAreLeftOutForANewClient() {
+        final ChangeLog log = new ChangeLog(10);
+        stored(log, "a", 1);
+        stored(log, "b", 2);
+        log.record("a", 3, null);
+        assertEquals(Arrays.asList("b@2"), describe(log.changes(0, 3)));
+        assertEquals(Arrays.asList("b@2", "-a@3"), describe(log.changes(1, 3)));
+    }
+
+    @Test
+    public void expiredTombstonesMoveTheHorizon() {
+        final ChangeLog log = new ChangeLog(2);
+        for (long version = 1; version <= 3; version++) {
+            log.record("gone" + version, version, null);
+        }
+        assertEquals(1, log.getHorizon());
+        assertEquals(Arrays.asList("-gone2@2", "-gone3@3"), describe(log.changes(1, 3)));
+
+        log.record("gone4", 4, null);
+        assertEquals(2, log.getHorizon());
+        assertTrue("changes past the horizon were answered", log.changes(1, 4) == null);
+        assertEquals(Arrays.asList("-gone3@3", "-gone4@4"), describe(log.changes(2, 4)));
+        // A new client is never behind the horizon
+        assertEquals(Collections.emptyList(), describe(log.changes(0, 4)));
+    }
+
+    @Test
+    public void aRestoredLogStartsAtItsHorizon() {
+        final ChangeLog log = new ChangeLog(10);
+        log.setHorizon(5);
+        stored(log, "a", 6);
+        assertTrue("changes from before the restore were answered", log.changes(4, 6) == null);
+        assertEquals(Arrays.asList("a@6"), describe(log.changes(5, 6)));
+        log.setHorizon(3);
+        assertEquals(5, log.getHorizon());
+    }
+}
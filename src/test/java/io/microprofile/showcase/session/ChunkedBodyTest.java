@@ -0,0 +1,121 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A body written on one thread and sent on another, and what each side sees when the other stops.
+ */
+public class ChunkedBodyTest {
+
+    private static String failure(final Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause().getClass().getSimpleName();
+        }
+    }
+
+    @Test
+    public void everythingWrittenIsSentInOrder() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ChunkedBody body = new ChunkedBody();
+            // Far more than the chunks that may wait, so the writer waits for the reader
+            final int size = ChunkedBody.CHUNK * ChunkedBody.CHUNKS * 4 + 17;
+            final Future<?> written = executor.submit(() -> {
+                body.fill(out -> {
+                    for (int i = 0; i < size; i++) {
+                        out.write(i % 251);
+                    }
+                });
+                return null;
+            });
+            final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+            body.write(sent);
+            assertTrue("the writer failed", failure(written) == null);
+
+            final byte[] bytes = sent.toByteArray();
+            assertEquals(size, bytes.length);
+            for (int i = 0; i < size; i++) {
+                assertEquals(i % 251, bytes[i] & 0xff);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aFailedWriterFailsTheResponse() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ChunkedBody body = new ChunkedBody();
+            final Future<?> written = executor.submit(() -> {
+                body.fill(out -> {
+                    out.write(new byte[ChunkedBody.CHUNK * 3]);
+                    out.flush();
+                    throw new IOException("lost the input");
+                });
+                return null;
+            });
+            boolean failed = false;
+            try {
+                body.write(new ByteArrayOutputStream());
+            } catch (IOException e) {
+                failed = true;
+            }
+            assertTrue("the response completed", failed);
+            assertEquals("IOException", failure(written));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aClientThatGoesStopsTheWriter() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ChunkedBody body = new ChunkedBody();
+            final Future<?> written = executor.submit(() -> {
+                body.fill(out -> {
+                    while (true) {
+                        out.write(new byte[1024]);
+                    }
+                });
+                return null;
+            });
+            boolean failed = false;
+            try {
+                body.write(new OutputStream() {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        throw new IOException("connection reset");
+                    }
+
+                    @Override
+                    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                        throw new IOException("connection reset");
+                    }
+                });
+            } catch (IOException e) {
+                failed = true;
+            }
+            assertTrue("the send went on", failed);
+            assertEquals("IOException", failure(written));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.microprofile.showcase.session;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recovery from journals whose last record was cut short or damaged, as after a crash mid-write,
+ * the stamps recovered sessions keep, and writes that race shutdown.
+ */
+public class FileSessionJournalTest {
+
+    private static Session session(final String id, final long version) {
+        return new Session(null, "title " + id, "abstract", "code", "talk", Collections.singletonList("speaker"), 1)
+            .stored(id, version);
+    }
+
+    private static FileSessionJournal journal(final Path directory) {
+        return new FileSessionJournal(directory, FileSessionJournal.Fsync.ALWAYS, 100, Long.MAX_VALUE);
+    }
+
+    /**
+     * Journals three sessions, one segment's worth, and returns the segment.
+     */
+    private static Path writeThree(final Path directory) throws IOException {
+        final FileSessionJournal journal = journal(directory);
+        journal.recover();
+        journal.start(() -> SessionSnapshot.EMPTY);
+        journal.stored(session("a", 1));
+        journal.stored(session("b", 2));
+        journal.stored(session("c", 3));
+        journal.sync();
+        journal.close();
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sessions-*.log")) {
+            files.forEach(segments::add);
+        }
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private static List<String> ids(final SessionSnapshot snapshot) {
+        final List<String> ids = new ArrayList<>();
+        for (Session session : snapshot.getSessions()) {
+            ids.add(session.getId());
+        }
+        return ids;
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void truncatedTailIsDropped() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try {
+            final Path segment = writeThree(directory);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 3);
+            }
+            final SessionSnapshot recovered = journal(directory).recover();
+            assertEquals(Arrays.asList("a", "b"), ids(recovered));
+            assertEquals(2, recovered.getVersion());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void corruptTailIsDropped() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try {
+            final Path segment = writeThree(directory);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, channel.size() - 1);
+                last.put(0, (byte) (last.get(0) ^ 0xff));
+                last.rewind();
+                channel.write(last, channel.size() - 1);
+            }
+            final SessionSnapshot recovered = journal(directory).recover();
+            assertEquals(Arrays.asList("a", "b"), ids(recovered));
+            assertEquals(2, recovered.getVersion());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void writesAfterADamagedTailAreRecovered() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try {
+            final Path segment = writeThree(directory);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 3);
+            }
+            final FileSessionJournal journal = journal(directory);
+            journal.recover();
+            journal.start(() -> SessionSnapshot.EMPTY);
+            journal.stored(session("d", 3));
+            journal.removed("a", 4);
+            journal.sync();
+            journal.close();
+
+            final SessionSnapshot recovered = journal(directory).recover();
+            assertEquals(Arrays.asList("b", "d"), ids(recovered));
+            assertEquals(4, recovered.getVersion());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void stampsAreRecovered() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try {
+            final FileSessionJournal journal = journal(directory);
+            journal.recover();
+            journal.start(() -> SessionSnapshot.EMPTY);
+            journal.stored(session("a", 1).stored("a", 1, 1700000000000L, "replica-1"));
+            journal.stored(session("b", 2));
+            journal.sync();
+            journal.close();
+
+            final List<String> stamps = new ArrayList<>();
+            for (Session session : journal(directory).recover().getSessions()) {
+                stamps.add(session.getStamp());
+            }
+            // The same stamps any replica holding these writes gives them
+            assertEquals(Arrays.asList("1700000000000.replica-1", "0"), stamps);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void writesAfterCloseAreNotAcknowledged() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try {
+            final FileSessionJournal journal = journal(directory);
+            journal.recover();
+            journal.start(() -> SessionSnapshot.EMPTY);
+            journal.stored(session("a", 1));
+            journal.sync();
+            journal.close();
+
+            journal.stored(session("b", 2));
+            boolean failed = false;
+            try {
+                journal.sync();
+            } catch (UncheckedIOException e) {
+                failed = true;
+            }
+            assertTrue("a write after close was acknowledged", failed);
+            // The failure was reported once; nothing is left to sync
+            journal.sync();
+            assertEquals(Arrays.asList("a"), ids(journal(directory).recover()));
+        } finally {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.microprofile.showcase.session;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ownership on rings of a few nodes, over many keys.
+ */
+public class HashRingTest {
+
+    private static final int KEYS = 30000;
+
+    private static String key(final int i) {
+        return "session-" + i;
+    }
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        final HashRing ring = new HashRing(Arrays.asList("http://a/", "http://b/", "http://c/"), 128);
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.owner(key(i)), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("uneven share " + count, count > KEYS / 3 * 0.8 && count < KEYS / 3 * 1.2);
+        }
+    }
+
+    @Test
+    public void addingANodeOnlyMovesKeysToIt() {
+        final HashRing before = new HashRing(Arrays.asList("http://a/", "http://b/", "http://c/"), 128);
+        final HashRing after = new HashRing(Arrays.asList("http://a/", "http://b/", "http://c/", "http://d/"), 128);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            final String owner = after.owner(key(i));
+            if (!owner.equals(before.owner(key(i)))) {
+                assertEquals("http://d/", owner);
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2);
+    }
+
+    @Test
+    public void ringsOfTheSameNodesAgree() {
+        final HashRing one = new HashRing(Arrays.asList("http://a/", "http://b/"), 16);
+        final HashRing other = new HashRing(Arrays.asList("http://b/", "http://a/"), 16);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(one.owner(key(i)), other.owner(key(i)));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.microprofile.showcase.session;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Several replicas in one JVM, pulling from each other through method calls.
+ */
+public class ReplicatorTest {
+
+    private static final class Node {
+
+        final SessionStore store;
+
+        final Replicator replicator;
+
+        Node(final String origin, final int maxLogEntries) {
+            this(new SessionStore(), origin, maxLogEntries);
+        }
+
+        Node(final SessionStore store, final String origin, final int maxLogEntries) {
+            this.store = store;
+            store.enableReplication(origin, maxLogEntries);
+            replicator = new Replicator(store, 2);
+        }
+
+        void pullFrom(final Node other) throws Exception {
+            replicator.pull(other.replicator::serve);
+        }
+    }
+
+    private static Session session(final String title) {
+        return new Session(null, title, "abstract", "code", "talk", Collections.singletonList("speaker"), 1);
+    }
+
+    private static void sync(final Node... nodes) throws Exception {
+        for (Node node : nodes) {
+            for (Node other : nodes) {
+                if (node != other) {
+                    node.pullFrom(other);
+                }
+            }
+        }
+    }
+
+    private static void assertSameSessions(final Node a, final Node b) {
+        assertEquals(a.store.getSessions().size(), b.store.getSessions().size());
+        for (Session session : a.store.getSessions()) {
+            final Optional<Session> other = b.store.find(session.getId());
+            assertTrue(other.isPresent());
+            assertEquals(session.getTitle(), other.get().getTitle());
+        }
+    }
+
+    @Test
+    public void writesReachEveryReplicaThroughAnother() throws Exception {
+        final Node a = new Node("a", 100);
+        final Node b = new Node("b", 100);
+        final Node c = new Node("c", 100);
+        final Session saved = a.store.save(session("first"));
+        a.store.saveAll(Arrays.asList(session("second"), session("third")));
+
+        b.pullFrom(a);
+        c.pullFrom(b);
+
+        assertEquals("first", c.store.find(saved.getId()).get().getTitle());
+        assertSameSessions(a, c);
+    }
+
+    @Test
+    public void concurrentUpdatesConverge() throws Exception {
+        final Node a = new Node("a", 100);
+        final Node b = new Node("b", 100);
+        final String id = a.store.save(session("original")).getId();
+        b.pullFrom(a);
+
+        a.store.update(id, session("from a"));
+        b.store.update(id, session("from b"));
+        sync(a, b);
+
+        assertSameSessions(a, b);
+    }
+
+    @Test
+    public void laterRemovalWinsOverEarlierUpdate() throws Exception {
+        final Node a = new Node("a", 100);
+        final Node b = new Node("b", 100);
+        final String id = a.store.save(session("original")).getId();
+        b.pullFrom(a);
+
+        b.store.update(id, session("updated"));
+        Thread.sleep(5);
+        a.store.remove(id);
+        sync(a, b);
+
+        assertFalse(a.store.find(id).isPresent());
+        assertFalse(b.store.find(id).isPresent());
+    }
+
+    @Test
+    public void replicaBehindTheLogCatchesUpFromTheWholeState() throws Exception {
+        final Node a = new Node("a", 2);
+        for (int i = 0; i < 5; i++) {
+            a.store.save(session("session " + i));
+        }
+        a.store.remove(a.store.getSessions().iterator().next().getId());
+
+        final Node restarted = new Node("b", 2);
+        restarted.pullFrom(a);
+        assertSameSessions(a, restarted);
+
+        a.store.save(session("after"));
+        restarted.pullFrom(a);
+        assertSameSessions(a, restarted);
+    }
+
+    @Test
+    public void sessionsFromBeforeReplicationReachANewReplica() throws Exception {
+        final SessionStore recovered = new SessionStore();
+        final Session early = recovered.save(session("recovered"));
+        final Node a = new Node(recovered, "a", 100);
+        a.store.save(session("later"));
+
+        final Node b = new Node("b", 100);
+        b.pullFrom(a);
+        assertTrue(b.store.find(early.getId()).isPresent());
+        assertSameSessions(a, b);
+
+        // Taken once, after which only the log is sent
+        a.store.save(session("last"));
+        b.pullFrom(a);
+        assertSameSessions(a, b);
+    }
+
+    @Test
+    public void tombstonesAreForgottenPastTheHorizon() throws Exception {
+        final Node a = new Node("a", 100);
+        a.store.remove(a.store.save(session("removed")).getId());
+        assertEquals(1, a.store.getTombstoneCount());
+
+        assertEquals(0, a.store.pruneTombstones(0));
+        assertEquals(1, a.store.pruneTombstones(Long.MAX_VALUE));
+        assertEquals(0, a.store.getTombstoneCount());
+    }
+}
@@ -0,0 +1,128 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * What the response cache encodes again, after a write moves the version on or an entry is evicted.
+ */
+public class ResponseCacheTest {
+
+    private static ResponseCache cache(final long maxBytes) {
+        final ResponseCache cache = new ResponseCache();
+        cache.maxBytes = maxBytes;
+        cache.minBytes = 16;
+        return cache;
+    }
+
+    /**
+     * Content that says which version it is, counting how often it is written.
+     */
+    private static ResponseCache.Content content(final String name, final long version, final AtomicInteger writes) {
+        return out -> {
+            writes.incrementAndGet();
+            final StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                text.append(name).append(" at version ").append(version).append('\n');
+            }
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    private static String gunzip(final byte[] compressed) throws IOException {
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                plain.write(buffer, 0, read);
+            }
+        }
+        return new String(plain.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void aNewVersionIsEncodedOnce() throws IOException {
+        final ResponseCache cache = cache(1 << 20);
+        final AtomicInteger writes = new AtomicInteger();
+        cache.get("sessions", 1, ResponseCache.Coding.GZIP, content("sessions", 1, writes));
+        cache.get("sessions", 1, ResponseCache.Coding.GZIP, content("sessions", 1, writes));
+        assertEquals(1, writes.get());
+
+        final byte[] second = cache.get("sessions", 2, ResponseCache.Coding.GZIP, content("sessions", 2, writes));
+        assertEquals(2, writes.get());
+        assertTrue("stale content served", gunzip(second).startsWith("sessions at version 2\n"));
+        cache.get("sessions", 2, ResponseCache.Coding.GZIP, content("sessions", 2, writes));
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    public void anOlderVersionDoesNotReplaceANewerOne() {
+        final ResponseCache cache = cache(1 << 20);
+        final AtomicInteger writes = new AtomicInteger();
+        cache.get("sessions", 2, ResponseCache.Coding.GZIP, content("sessions", 2, writes));
+        // A request that read the store before the write finishes late
+        cache.get("sessions", 1, ResponseCache.Coding.GZIP, content("sessions", 1, writes));
+        cache.get("sessions", 2, ResponseCache.Coding.GZIP, content("sessions", 2, writes));
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    public void codingsAreCachedApart() {
+        final ResponseCache cache = cache(1 << 20);
+        final AtomicInteger writes = new AtomicInteger();
+        cache.get("sessions", 1, ResponseCache.Coding.GZIP, content("sessions", 1, writes));
+        cache.get("sessions", 1, ResponseCache.Coding.DEFLATE, content("sessions", 1, writes));
+        cache.get("sessions", 1, ResponseCache.Coding.GZIP, content("sessions", 1, writes));
+        cache.get("sessions", 1, ResponseCache.Coding.DEFLATE, content("sessions", 1, writes));
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    public void theLeastRecentlyUsedEntryIsEvicted() {
+        final AtomicInteger writes = new AtomicInteger();
+        final long entry = 96 + cache(1 << 20).get("a", 1, ResponseCache.Coding.GZIP, content("a", 1, writes)).length;
+        // Room for two entries, not three
+        final ResponseCache cache = cache(entry * 2 + entry / 2);
+        final AtomicInteger a = new AtomicInteger();
+        final AtomicInteger b = new AtomicInteger();
+        final AtomicInteger c = new AtomicInteger();
+        cache.get("a", 1, ResponseCache.Coding.GZIP, content("a", 1, a));
+        cache.get("b", 1, ResponseCache.Coding.GZIP, content("b", 1, b));
+        cache.get("a", 1, ResponseCache.Coding.GZIP, content("a", 1, a));
+        cache.get("c", 1, ResponseCache.Coding.GZIP, content("c", 1, c));
+
+        cache.get("a", 1, ResponseCache.Coding.GZIP, content("a", 1, a));
+        cache.get("c", 1, ResponseCache.Coding.GZIP, content("c", 1, c));
+        assertEquals(1, a.get());
+        assertEquals(1, c.get());
+        cache.get("b", 1, ResponseCache.Coding.GZIP, content("b", 1, b));
+        assertEquals(2, b.get());
+    }
+
+    @Test
+    public void smallContentIsNotCompressed() {
+        final ResponseCache cache = cache(1 << 20);
+        assertTrue("small content compressed",
+            cache.get("one", 1, ResponseCache.Coding.GZIP, out -> out.write('x')) == null);
+    }
+
+    @Test
+    public void gzipIsPreferredAndRefusedCodingsAreSkipped() {
+        assertEquals(ResponseCache.Coding.GZIP, ResponseCache.negotiate("deflate, gzip"));
+        assertEquals(ResponseCache.Coding.DEFLATE, ResponseCache.negotiate("gzip;q=0, deflate"));
+        assertEquals(ResponseCache.Coding.GZIP, ResponseCache.negotiate("x-gzip"));
+        assertTrue("identity compressed", ResponseCache.negotiate("identity") == null);
+        assertTrue("nothing compressed", ResponseCache.negotiate(null) == null);
+    }
+}
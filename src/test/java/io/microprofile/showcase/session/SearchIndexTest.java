@@ -0,0 +1,75 @@
+package io.microprofile.showcase.session;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Rankings of small indexes whose scores are known by hand.
+ */
+public class SearchIndexTest {
+
+    private static Session session(final String id, final String title, final String abstractText, final String code,
+                                   final List<String> speakers) {
+        return new Session(null, title, abstractText, code, "talk", speakers, 1).stored(id, 1);
+    }
+
+    private static SearchIndex index(final Session... sessions) {
+        final SearchIndex index = new SearchIndex();
+        for (Session session : sessions) {
+            index.add(session);
+        }
+        return index;
+    }
+
+    @Test
+    public void fieldsRankByWeight() {
+        final SearchIndex index = index(
+            session("abstract", "other", "all about java", "x1", Collections.emptyList()),
+            session("title", "java today", "other", "x2", Collections.emptyList()),
+            session("code", "other", "other", "java", Collections.emptyList()),
+            session("speaker", "other", "other", "x3", Collections.singletonList("java")));
+        assertEquals(Arrays.asList("code", "speaker", "title", "abstract"), index.search("java", 0, 10));
+    }
+
+    @Test
+    public void tiesAreOrderedById() {
+        final SearchIndex index = index(
+            session("c", "cloud native", "", "x1", Collections.emptyList()),
+            session("a", "cloud native", "", "x2", Collections.emptyList()),
+            session("b", "cloud native", "", "x3", Collections.emptyList()));
+        assertEquals(Arrays.asList("a", "b", "c"), index.search("cloud", 0, 10));
+        assertEquals(Collections.singletonList("b"), index.search("cloud", 1, 1));
+        assertEquals(Collections.emptyList(), index.search("cloud", 3, 10));
+    }
+
+    @Test
+    public void everyTokenMustMatchAndScoresAdd() {
+        final Session both = session("both", "java cloud", "", "x1", Collections.emptyList());
+        final Session richer = session("richer", "java", "cloud", "cloud", Collections.emptyList());
+        final Session javaOnly = session("javaOnly", "java java", "", "x3", Collections.emptyList());
+        final SearchIndex index = index(both, richer, javaOnly);
+
+        // richer: title 3 + code 5 + abstract 1; both: title 3 + title 3
+        assertEquals(Arrays.asList("richer", "both"), index.search("Java, CLOUD", 0, 10));
+        assertEquals(9, SearchIndex.score(richer, "java cloud"));
+        assertEquals(6, SearchIndex.score(both, "java cloud"));
+        assertEquals(Collections.emptyList(), index.search("java missing", 0, 10));
+    }
+
+    @Test
+    public void removedSessionsStopMatching() {
+        final Session first = session("first", "java", "", "x1", Collections.emptyList());
+        final Session second = session("second", "java", "", "x2", Collections.emptyList());
+        final SearchIndex index = index(first, second);
+        index.remove(first);
+        assertEquals(Collections.singletonList("second"), index.search("java", 0, 10));
+        index.remove(second);
+        assertEquals(Collections.emptyList(), index.search("java", 0, 10));
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,109 @@
+package io.microprofile.showcase.session;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sessions through CBOR and back, and the input the decoder turns away.
+ */
+public class SessionCborTest {
+
+    private static Session decode(final byte[] cbor) {
+        return SessionCbor.decode(ByteBuffer.wrap(cbor), 100, 3);
+    }
+
+    /**
+     * The message the decoder rejects the input with, or null if it accepts it.
+     */
+    private static String rejection(final int... cbor) {
+        final byte[] bytes = new byte[cbor.length];
+        for (int i = 0; i < cbor.length; i++) {
+            bytes[i] = (byte) cbor[i];
+        }
+        try {
+            decode(bytes);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String rejectionOf(final byte[] cbor) {
+        final int[] values = new int[cbor.length];
+        for (int i = 0; i < cbor.length; i++) {
+            values[i] = cbor[i] & 0xff;
+        }
+        return rejection(values);
+    }
+
+    @Test
+    public void sessionsSurviveARoundTrip() {
+        final Session session = new Session("id-1", "Café talk", null, "C1", "keynote",
+            Arrays.asList("ada", "grace"), -2);
+        final Session decoded = decode(SessionCbor.encode(session));
+        assertEquals("id-1", decoded.getId());
+        assertEquals("Café talk", decoded.getTitle());
+        assertTrue("null abstract came back", decoded.getAbstract() == null);
+        assertEquals("C1", decoded.getCode());
+        assertEquals("keynote", decoded.getType());
+        assertEquals(Arrays.asList("ada", "grace"), new ArrayList<>(decoded.getSpeakers()));
+        assertEquals(-2, decoded.getSchedule());
+    }
+
+    @Test
+    public void largeSchedulesUseLongerHeads() {
+        for (int schedule : new int[]{23, 24, 255, 256, 65535, 65536, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            final Session session = new Session("id", "t", "a", "c", "talk", Collections.emptyList(), schedule);
+            assertEquals(schedule, decode(SessionCbor.encode(session)).getSchedule());
+        }
+    }
+
+    @Test
+    public void unknownKeysAreSkipped() {
+        // {"x": [1, {"y": null}], "id": "a", "schedule": 1}
+        final Session decoded = decode(new byte[]{
+            (byte) 0xa3,
+            0x61, 'x', (byte) 0x82, 0x01, (byte) 0xa1, 0x61, 'y', (byte) 0xf6,
+            0x62, 'i', 'd', 0x61, 'a',
+            0x68, 's', 'c', 'h', 'e', 'd', 'u', 'l', 'e', 0x01});
+        assertEquals("a", decoded.getId());
+        assertEquals(1, decoded.getSchedule());
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        // An array, not a map
+        assertEquals("A session must be a CBOR map", rejection(0x80));
+        // Nothing at all, and a map cut short
+        assertEquals("Unexpected end of session", rejection());
+        assertEquals("Unexpected end of session", rejection(0xa1, 0x62, 'i', 'd', 0x63, 'a'));
+        // {} followed by a stray byte
+        assertEquals("Unexpected data after the session", rejection(0xa0, 0x00));
+        // {} with neither id nor schedule
+        assertEquals("Session id is required", rejection(0xa0));
+        // An indefinite-length map
+        assertEquals("Indefinite-length items are not supported", rejection(0xbf, 0xff));
+        // {"id": 1}
+        assertEquals("Session id must be a text string", rejection(0xa1, 0x62, 'i', 'd', 0x01));
+        // A map claiming 2^64 - 1 entries
+        assertTrue("huge length accepted",
+            rejection(0xbb, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff) != null);
+    }
+
+    @Test
+    public void limitsAreEnforced() {
+        final Session longTitle = new Session("id", new String(new char[101]).replace('\0', 't'), "a", "c", "talk",
+            Collections.emptyList(), 1);
+        assertEquals("Session title is longer than 100 characters",
+            rejectionOf(SessionCbor.encode(longTitle)));
+        final Session crowded = new Session("id", "t", "a", "c", "talk", Arrays.asList("a", "b", "c", "d"), 1);
+        assertEquals("A session may have at most 3 speakers", rejectionOf(SessionCbor.encode(crowded)));
+    }
+}
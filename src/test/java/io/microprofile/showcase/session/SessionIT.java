@@ -116,6 +116,17 @@ public class SessionIT {
            
     }
 
+    // Test SessionResource.search()
+    @Test
+    public void testSearchNoJaxRS () throws Exception { 
+        URL url = new URL(getBaseURI().toString() + "/search?q=amazing+game");
+        String found = getContent (url, Method.GET, null);
+        JsonReader rdr = Json.createReader(new StringReader(found));
+        JsonArray arr = rdr.readArray();
+        assertTrue ("Expected search results in " + found, arr.size() > 0);
+        assertTrue ("Expected session 45 first in " + found, "45".equals(arr.getJsonObject(0).getString("id")));
+    }
+
     private URI getBaseURI() throws URISyntaxException { 
         assertNotNull (url);
         System.out.println ("URL = " + url.toString());
@@ -0,0 +1,112 @@
+package io.microprofile.showcase.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sessions read from JSON, and the status the reader turns bad or oversized input away with.
+ */
+public class SessionReaderTest {
+
+    // At most 100 bytes, 10 characters a field and 2 speakers
+    private static final SessionReader READER = new SessionReader(100, 10, 2);
+
+    private static String repeat(final char c, final int count) {
+        return new String(new char[count]).replace('\0', c);
+    }
+
+    private static Session readFrom(final String json, final String contentLength) throws IOException {
+        final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        if (contentLength != null) {
+            headers.putSingle(HttpHeaders.CONTENT_LENGTH, contentLength);
+        }
+        return READER.readFrom(Session.class, Session.class, null, MediaType.APPLICATION_JSON_TYPE, headers,
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The status the reader rejects the JSON with, read as a request body, or 0 if it accepts it.
+     */
+    private static int rejection(final String json) throws IOException {
+        try {
+            readFrom(json, null);
+            return 0;
+        } catch (WebApplicationException e) {
+            return e.getResponse().getStatus();
+        }
+    }
+
+    /**
+     * The status the reader rejects the JSON with, read as an NDJSON line, or 0 if it accepts it.
+     */
+    private static int lineRejection(final String json) {
+        try {
+            READER.read(json);
+            return 0;
+        } catch (WebApplicationException e) {
+            return e.getResponse().getStatus();
+        }
+    }
+
+    @Test
+    public void sessionsAreReadInOnePass() throws IOException {
+        final Session session = readFrom("{\"id\":\"a\",\"title\":\"t\",\"abstract\":null,\"extra\":{\"x\":[1,{}]},"
+            + "\"speakers\":[\"ada\",\"grace\"],\"schedule\":3}", null);
+        assertEquals("a", session.getId());
+        assertEquals("t", session.getTitle());
+        assertTrue("null abstract came back", session.getAbstract() == null);
+        assertEquals(Arrays.asList("ada", "grace"), new ArrayList<>(session.getSpeakers()));
+        assertEquals(3, session.getSchedule());
+    }
+
+    @Test
+    public void invalidSessionsAreBadRequests() throws IOException {
+        assertEquals(400, rejection("{\"schedule\":1}"));
+        assertEquals(400, rejection("{\"id\":\"a\"}"));
+        assertEquals(400, rejection("{\"id\":1,\"schedule\":1}"));
+        assertEquals(400, rejection("{\"id\":\"a\",\"schedule\":1.5}"));
+        assertEquals(400, rejection("[]"));
+        assertEquals(400, rejection("{\"id\":\"a\""));
+        assertEquals(400, lineRejection("{\"schedule\":1}"));
+        assertEquals(400, lineRejection("not json"));
+    }
+
+    @Test
+    public void fieldLimitsAreBadRequests() throws IOException {
+        assertEquals(0, rejection("{\"id\":\"a\",\"title\":\"" + repeat('t', 10) + "\",\"schedule\":1}"));
+        assertEquals(400, rejection("{\"id\":\"a\",\"title\":\"" + repeat('t', 11) + "\",\"schedule\":1}"));
+        assertEquals(400, rejection("{\"id\":\"a\",\"speakers\":[\"" + repeat('s', 11) + "\"],\"schedule\":1}"));
+        assertEquals(0, rejection("{\"id\":\"a\",\"speakers\":[\"x\",\"y\"],\"schedule\":1}"));
+        assertEquals(400, rejection("{\"id\":\"a\",\"speakers\":[\"x\",\"y\",\"z\"],\"schedule\":1}"));
+    }
+
+    @Test
+    public void oversizedPayloadsAreTooLarge() throws IOException {
+        final String large = "{\"id\":\"a\",\"schedule\":1,\"x\":\"" + repeat('x', 100) + "\"}";
+        // Turned away while it is read when it declares no length, and before when it does
+        assertEquals(413, rejection(large));
+        try {
+            readFrom("{\"id\":\"a\",\"schedule\":1}", "101");
+            assertTrue("declared length accepted", false);
+        } catch (WebApplicationException e) {
+            assertEquals(413, e.getResponse().getStatus());
+        }
+        assertEquals(413, lineRejection(large));
+        // Under 100 characters, but over 100 bytes
+        assertEquals(413, lineRejection("{\"id\":\"a\",\"schedule\":1,\"x\":\"" + repeat('€', 34) + "\"}"));
+    }
+}
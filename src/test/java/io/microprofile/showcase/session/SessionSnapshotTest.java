@@ -0,0 +1,86 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Snapshots built up change by change, checked against a sorted map of the same changes.
+ */
+public class SessionSnapshotTest {
+
+    private static Session session(final String id, final long version) {
+        return new Session(null, "title " + id, "abstract", "code", "talk", Collections.singletonList("speaker"), 1)
+            .stored(id, version);
+    }
+
+    private static void assertSameSessions(final TreeMap<String, Session> expected, final SessionSnapshot snapshot) {
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(snapshot.getSessions()));
+        final List<Session> byIndex = new ArrayList<>();
+        for (int i = 0; i < snapshot.getSessions().size(); i++) {
+            byIndex.add(snapshot.getSessions().get(i));
+        }
+        assertEquals(new ArrayList<>(expected.values()), byIndex);
+    }
+
+    @Test
+    public void changesMatchASortedMap() {
+        final Random random = new Random(7);
+        final TreeMap<String, Session> expected = new TreeMap<>();
+        SessionSnapshot snapshot = SessionSnapshot.EMPTY;
+        long version = 0;
+        for (int round = 0; round < 200; round++) {
+            final List<ChangeLog.Change> changes = new ArrayList<>();
+            for (int i = random.nextInt(50); i >= 0; i--) {
+                final String id = String.format("%04d", random.nextInt(2000));
+                version++;
+                // Mostly stores, so the snapshot grows past many chunks
+                final Session session = random.nextInt(4) == 0 ? null : session(id, version);
+                changes.add(new ChangeLog.Change(version, id, session));
+                if (session != null) {
+                    expected.put(id, session);
+                }
+                else {
+                    expected.remove(id);
+                }
+            }
+            final SessionSnapshot previous = snapshot;
+            final int previousSize = previous.getSessions().size();
+            snapshot = snapshot.with(version, changes);
+            assertEquals(version, snapshot.getVersion());
+            assertSameSessions(expected, snapshot);
+            // Snapshots already published do not change
+            assertEquals(previousSize, previous.getSessions().size());
+        }
+    }
+
+    @Test
+    public void pagesFollowTheCursor() {
+        final List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < 500; i += 2) {
+            sessions.add(session(String.format("%04d", i), i + 1));
+        }
+        Collections.shuffle(sessions, new Random(3));
+        final SessionSnapshot snapshot = new SessionSnapshot(500, sessions);
+
+        final List<Session> paged = new ArrayList<>();
+        String cursor = null;
+        List<Session> page;
+        do {
+            page = snapshot.after(cursor, 37);
+            paged.addAll(page);
+            cursor = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+        } while (page.size() == 37);
+        assertEquals(snapshot.getSessions(), paged);
+
+        // A cursor need not be an id in the snapshot
+        assertEquals("0102", snapshot.after("0101", 1).get(0).getId());
+        assertEquals(0, snapshot.after("9999", 10).size());
+    }
+}
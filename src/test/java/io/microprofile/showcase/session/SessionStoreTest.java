@@ -0,0 +1,155 @@
+package io.microprofile.showcase.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes to the store: their If-Match preconditions, concurrent edits, and what they tell clients,
+ * listeners and other replicas.
+ */
+public class SessionStoreTest {
+
+    private static Session session(final String title) {
+        return new Session(null, title, "abstract", "code", "talk", Collections.singletonList("speaker"), 1);
+    }
+
+    /**
+     * A replicating store, and every change its listeners are told about as created, updated or
+     * deleted with the id.
+     */
+    private static SessionStore store(final List<String> changes) {
+        final SessionStore store = new SessionStore();
+        store.enableReplication("a", 100);
+        store.addListener((previous, current) -> changes.add(
+            (previous == null ? "created " : current == null ? "deleted " : "updated ")
+                + (current != null ? current : previous).getId()));
+        return store;
+    }
+
+    /**
+     * Whether the write failed its precondition, which clients get as a 412.
+     */
+    private static boolean preconditionFailed(final Runnable write) {
+        try {
+            write.run();
+            return false;
+        } catch (ConcurrentModificationException e) {
+            return true;
+        }
+    }
+
+    @Test
+    public void writesAtTheExpectedStampSucceed() {
+        final SessionStore store = store(new ArrayList<>());
+        final Session saved = store.save(session("first"));
+
+        final Session updated = store.update(saved.getId(), session("second"), saved.getStamp()).get();
+        assertEquals("second", updated.getTitle());
+        assertFalse("the stamp stayed", updated.getStamp().equals(saved.getStamp()));
+
+        final Session computed = store.compute(saved.getId(), updated.getStamp(),
+            current -> current.withSpeakers(Collections.singletonList("ada"))).get();
+        assertEquals(Collections.singletonList("ada"), new ArrayList<>(computed.getSpeakers()));
+
+        assertTrue("not removed", store.remove(saved.getId(), computed.getStamp()).isPresent());
+        assertFalse("still here", store.find(saved.getId()).isPresent());
+    }
+
+    @Test
+    public void writesAtAStaleStampFail() {
+        final SessionStore store = store(new ArrayList<>());
+        final Session saved = store.save(session("first"));
+        final String stale = saved.getStamp();
+        store.update(saved.getId(), session("second"));
+
+        assertTrue("stale update", preconditionFailed(() -> store.update(saved.getId(), session("third"), stale)));
+        assertTrue("stale compute", preconditionFailed(() -> store.compute(saved.getId(), stale, current -> current)));
+        assertTrue("stale remove", preconditionFailed(() -> store.remove(saved.getId(), stale)));
+        // What a weak or unreadable If-Match becomes
+        assertTrue("unreadable tag", preconditionFailed(() -> store.remove(saved.getId(), "")));
+        assertEquals("second", store.find(saved.getId()).get().getTitle());
+
+        // Without If-Match, whatever is stored is written
+        assertEquals("third", store.update(saved.getId(), session("third"), SessionStore.ANY_STAMP).get().getTitle());
+        assertTrue("not removed", store.remove(saved.getId(), SessionStore.ANY_STAMP).isPresent());
+        assertFalse("missing session found", store.update(saved.getId(), session("fourth"), stale).isPresent());
+    }
+
+    @Test
+    public void concurrentSpeakerEditsAreAllKept() throws Exception {
+        final SessionStore store = store(new ArrayList<>());
+        final String id = store.save(new Session(null, "title", "abstract", "code", "talk", Collections.emptyList(), 1))
+            .getId();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> edits = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String speaker = "speaker-" + i;
+                edits.add(executor.submit(() -> store.compute(id, SessionStore.ANY_STAMP, current -> {
+                    final List<String> speakers = new ArrayList<>(current.getSpeakers());
+                    speakers.add(speaker);
+                    return current.withSpeakers(speakers);
+                })));
+            }
+            for (Future<?> edit : edits) {
+                edit.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(200, store.find(id).get().getSpeakers().size());
+    }
+
+    @Test
+    public void aHandedOffSessionIsNotReportedAsRemoved() {
+        final List<String> changes = new ArrayList<>();
+        final SessionStore store = store(changes);
+        final Session kept = store.save(session("kept"));
+        final Session moved = store.save(session("moved"));
+        final long before = store.getVersion();
+
+        assertTrue("not dropped", store.handedOff(moved.getId(), moved.getStamp()).isPresent());
+        assertFalse("still here", store.find(moved.getId()).isPresent());
+        assertEquals(1, store.getSessions().size());
+
+        assertEquals(2, changes.size());
+        assertEquals(0, store.getTombstoneCount());
+        // Neither a tombstone for clients that had it nor the session for new clients
+        assertTrue("tombstone sent", store.changesSince(before, store.getVersion()).isEmpty());
+        final List<ChangeLog.Change> all = store.changesSince(0, store.getVersion());
+        assertEquals(1, all.size());
+        assertEquals(kept.getId(), all.get(0).sessionId);
+    }
+
+    @Test
+    public void aSessionChangedOnItsWayIsNotHandedOff() {
+        final List<String> changes = new ArrayList<>();
+        final SessionStore store = store(changes);
+        final Session sent = store.save(session("sent"));
+        store.update(sent.getId(), session("changed"));
+
+        boolean refused = false;
+        try {
+            store.handedOff(sent.getId(), sent.getStamp());
+        } catch (ConcurrentModificationException e) {
+            refused = true;
+        }
+        assertTrue("dropped a newer write", refused);
+        assertEquals("changed", store.find(sent.getId()).get().getTitle());
+
+        // A later removal is reported as usual
+        store.remove(sent.getId());
+        assertEquals("deleted " + sent.getId(), changes.get(changes.size() - 1));
+    }
+}